@@ -0,0 +1,44 @@
+package parkinglot;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Hands out any free spot of the requested type, ignoring the entrance.
+ * Backed by one lock-free {@link FreeSpotPool} per type.
+ */
+public class AnyFreeSpotStrategy implements SpotAssignmentStrategy {
+    private Map<ParkingSpotType, FreeSpotPool> freeSpots;
+
+    public AnyFreeSpotStrategy() {
+        this.freeSpots = new EnumMap<>(ParkingSpotType.class);
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            freeSpots.put(type, new FreeSpotPool());
+        }
+    }
+
+    @Override
+    public void addSpot(ParkingSpot spot) {
+        freeSpots.get(spot.getType()).add(spot);
+    }
+
+    @Override
+    public ParkingSpot tryAcquire(ParkingSpotType type, EntrancePanel entrance) {
+        return freeSpots.get(type).tryAcquire();
+    }
+
+    @Override
+    public boolean claim(ParkingSpot spot) {
+        return freeSpots.get(spot.getType()).claim(spot);
+    }
+
+    @Override
+    public boolean release(ParkingSpot spot) {
+        return freeSpots.get(spot.getType()).release(spot);
+    }
+
+    @Override
+    public int getFreeSpotCount(ParkingSpotType type) {
+        return freeSpots.get(type).getFreeCount();
+    }
+}
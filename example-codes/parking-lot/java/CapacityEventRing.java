@@ -0,0 +1,80 @@
+package parkinglot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounded lock-free ring of int events with many producers and a single
+ * consumer. Each slot carries a sequence number telling producers whether
+ * it is free and the consumer whether it has been published. When the ring
+ * is full new events are dropped and an overflow flag is raised instead.
+ */
+class CapacityEventRing {
+    private final int[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private long head; // only touched by the consumer
+    private volatile boolean overflowed;
+
+    CapacityEventRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.events = new int[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.tail = new AtomicLong();
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(int event) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events[slot] = event;
+                    sequences.lazySet(slot, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                overflowed = true;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Hands every published event to the consumer and returns how many there
+     * were. Must only be called from the consumer thread.
+     */
+    int drain(IntConsumer consumer) {
+        int drained = 0;
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                return drained;
+            }
+            consumer.accept(events[slot]);
+            sequences.lazySet(slot, head + events.length);
+            head++;
+            drained++;
+        }
+    }
+
+    /**
+     * Returns whether events were dropped since the last call.
+     */
+    boolean resetOverflow() {
+        if (overflowed) {
+            overflowed = false;
+            return true;
+        }
+        return false;
+    }
+}
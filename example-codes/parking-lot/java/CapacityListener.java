@@ -0,0 +1,13 @@
+package parkinglot;
+
+/**
+ * Notified by a {@link ParkingFloor} every time one of its spots is taken
+ * or given back. Called on the panel's thread, so implementations must be
+ * cheap and thread-safe.
+ */
+public interface CapacityListener {
+    /**
+     * @param delta -1 when a spot was taken, +1 when one was freed or added
+     */
+    void onCapacityChanged(ParkingFloor floor, ParkingSpotType type, int delta);
+}
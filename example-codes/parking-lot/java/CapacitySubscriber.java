@@ -0,0 +1,8 @@
+package parkinglot;
+
+/**
+ * Receives coalesced free spot counts from a {@link DisplayBoardPublisher}.
+ */
+public interface CapacitySubscriber {
+    void onFreeSpotCount(ParkingFloor floor, ParkingSpotType type, int freeCount);
+}
@@ -0,0 +1,147 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Free spot counts of a lot, kept as lot -> floor -> spot type.
+ * The lot-wide count per type is an atomic counter, so {@link #isFull} is
+ * O(1). Per type, a max segment tree over the floors answers "which floor
+ * has the most free spots" in O(1) and is updated in O(log floors) on every
+ * assign and free, under a lock of its own. Waits for that lock are
+ * sampled into the lot's {@link ParkingMetrics}.
+ */
+class CapacityTree implements CapacityListener {
+    private List<ParkingFloor> floors;
+    private Map<ParkingSpotType, AtomicInteger> lotFreeCounts;
+    private Map<ParkingSpotType, FloorTree> floorTrees;
+    private volatile int floorCount;
+
+    CapacityTree(ParkingMetrics metrics) {
+        this.floors = new ArrayList<>();
+        this.lotFreeCounts = new EnumMap<>(ParkingSpotType.class);
+        this.floorTrees = new EnumMap<>(ParkingSpotType.class);
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            lotFreeCounts.put(type, new AtomicInteger());
+            floorTrees.put(type, new FloorTree(metrics));
+        }
+    }
+
+    /**
+     * Registers a floor with its current free counts and starts listening
+     * to it. Floors are expected to be added during set-up.
+     */
+    synchronized void addFloor(ParkingFloor floor) {
+        floor.setIndex(floors.size());
+        floors.add(floor);
+        floorCount = floors.size();
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            int free = floor.getFreeSpotCount(type);
+            floorTrees.get(type).add(floor.getIndex(), free);
+            lotFreeCounts.get(type).addAndGet(free);
+        }
+        floor.addCapacityListener(this);
+    }
+
+    @Override
+    public void onCapacityChanged(ParkingFloor floor, ParkingSpotType type, int delta) {
+        floorTrees.get(type).update(floor.getIndex(), delta);
+        lotFreeCounts.get(type).addAndGet(delta);
+    }
+
+    ParkingFloor getFloor(int index) {
+        return floors.get(index);
+    }
+
+    int getFloorCount() {
+        return floorCount;
+    }
+
+    int getFreeSpotCount(ParkingSpotType type) {
+        return lotFreeCounts.get(type).get();
+    }
+
+    boolean isFull(ParkingSpotType type) {
+        return getFreeSpotCount(type) <= 0;
+    }
+
+    /**
+     * Returns the floor with the most free spots of the type, or null if
+     * every floor is full.
+     */
+    ParkingFloor getFloorWithMostFreeSpots(ParkingSpotType type) {
+        int index = floorTrees.get(type).best();
+        return index < 0 ? null : floors.get(index);
+    }
+
+    /**
+     * Max segment tree over floor indexes. Leaves hold the free count of a
+     * floor, inner nodes the index of the leaf with the largest count.
+     */
+    private static class FloorTree {
+        private int leaves = 1;
+        private int[] free = new int[1];
+        private int[] best = new int[2];
+        private volatile int root = -1;
+        private final ParkingMetrics metrics;
+
+        FloorTree(ParkingMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        synchronized void add(int floorIndex, int freeCount) {
+            if (floorIndex >= leaves) {
+                grow(floorIndex + 1);
+            }
+            apply(floorIndex, freeCount);
+        }
+
+        void update(int floorIndex, int delta) {
+            if (!ParkingMetrics.sampleLockWait()) {
+                synchronized (this) {
+                    apply(floorIndex, delta);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            synchronized (this) {
+                metrics.lockWaited(System.nanoTime() - start);
+                apply(floorIndex, delta);
+            }
+        }
+
+        private void apply(int floorIndex, int delta) {
+            free[floorIndex] += delta;
+            for (int node = (leaves + floorIndex) >>> 1; node > 0; node >>>= 1) {
+                best[node] = pick(best[2 * node], best[2 * node + 1]);
+            }
+            root = free[best[1]] > 0 ? best[1] : -1;
+        }
+
+        int best() {
+            return root;
+        }
+
+        private void grow(int size) {
+            while (leaves < size) {
+                leaves <<= 1;
+            }
+            free = Arrays.copyOf(free, leaves);
+            best = new int[2 * leaves];
+            for (int i = 0; i < leaves; i++) {
+                best[leaves + i] = i;
+            }
+            for (int node = leaves - 1; node > 0; node--) {
+                best[node] = pick(best[2 * node], best[2 * node + 1]);
+            }
+        }
+
+        private int pick(int a, int b) {
+            return free[b] > free[a] ? b : a;
+        }
+    }
+}
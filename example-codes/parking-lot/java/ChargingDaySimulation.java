@@ -0,0 +1,147 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Simulates a day of synthetic electric vehicle arrivals against a
+ * {@link ChargingScheduler}. Arrivals peak in the early afternoon and stay
+ * between 15 minutes and 8 hours. Once an hour every allocation is checked
+ * against a from-scratch water-filling by bisection, and at the end the
+ * latency of each start/stop is reported.
+ *
+ * It also checks that the totals return to exactly zero once every session
+ * has stopped.
+ *
+ * Run with {@code java -cp out parkinglot.ChargingDaySimulation [chargers] [budgetKw]};
+ * exits with status 1 if a check fails.
+ */
+public class ChargingDaySimulation {
+    private static final long HOUR = 3_600_000L;
+    private static final double[] CHARGER_KW = {7.4, 11, 22, 50, 150};
+
+    public static void main(String[] args) {
+        int chargers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        double budgetKw = args.length > 1 ? Double.parseDouble(args[1]) : 15_000;
+        boolean ok = simulateDay(chargers, budgetKw);
+        ok &= sumsReturnToZero();
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean simulateDay(int chargers, double budgetKw) {
+        Random random = new Random(5);
+        ChargingScheduler scheduler = new ChargingScheduler(budgetKw);
+        ElectricSpot[] spots = new ElectricSpot[chargers];
+        List<Integer> free = new ArrayList<>();
+        for (int i = 0; i < chargers; i++) {
+            spots[i] = new ElectricSpot("E" + i, CHARGER_KW[random.nextInt(CHARGER_KW.length)]);
+            free.add(i);
+        }
+        Collections.shuffle(free, random);
+
+        PriorityQueue<long[]> departures = new PriorityQueue<>(Comparator.comparingLong(d -> d[0]));
+        Map<Integer, Long> stays = new HashMap<>();
+        long[] latencies = new long[200_000];
+        int events = 0;
+        double maxError = 0;
+        for (long now = 0; now < 24 * HOUR; now += 1500) {
+            double hour = (double) now / HOUR;
+            double arrivalChance = Math.exp(-Math.pow(hour - 13, 2) / 18);
+            while (!departures.isEmpty() && departures.peek()[0] <= now) {
+                int spot = (int) departures.poll()[1];
+                long start = System.nanoTime();
+                scheduler.stopCharging(spots[spot]);
+                latencies[events++] = System.nanoTime() - start;
+                free.add(spot);
+                stays.remove(spot);
+            }
+            if (random.nextDouble() < arrivalChance && !free.isEmpty()) {
+                int spot = free.remove(free.size() - 1);
+                long stay = (long) (HOUR / 4 + random.nextDouble() * 8 * HOUR);
+                long start = System.nanoTime();
+                scheduler.startCharging(spots[spot], stay);
+                latencies[events++] = System.nanoTime() - start;
+                departures.add(new long[] {now + stay, spot});
+                stays.put(spot, stay);
+            }
+            if (now % HOUR == 0 && !stays.isEmpty()) {
+                double level = waterLevel(spots, stays, budgetKw);
+                for (Map.Entry<Integer, Long> entry : stays.entrySet()) {
+                    ElectricSpot spot = spots[entry.getKey()];
+                    double expected = Math.min(spot.getChargerKw(), weight(entry.getValue()) * level);
+                    maxError = Math.max(maxError, Math.abs(expected - scheduler.getAllocatedKw(spot)));
+                }
+                System.out.printf("%02d:00 sessions %5d, allocated %8.1f of %.0f kW%n",
+                        (int) hour, scheduler.getSessionCount(), scheduler.getTotalAllocatedKw(), budgetKw);
+            }
+        }
+        long[] sorted = Arrays.copyOf(latencies, events);
+        Arrays.sort(sorted);
+        System.out.printf("%,d starts/stops: p50 %d ns, p99 %d ns, max %d us; max error vs from-scratch %.2e kW%n",
+                events, sorted[events / 2], sorted[events * 99 / 100], sorted[events - 1] / 1000, maxError);
+        return maxError < 1e-6 && sorted[events * 99 / 100] < 1_000_000;
+    }
+
+    // Starting and stopping many sessions must not leave rounding residue
+    // in the totals.
+    private static boolean sumsReturnToZero() {
+        ChargingScheduler scheduler = new ChargingScheduler(500);
+        Random random = new Random(7);
+        List<ElectricSpot> spots = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ElectricSpot spot = new ElectricSpot("Z" + i, CHARGER_KW[random.nextInt(CHARGER_KW.length)]);
+            scheduler.startCharging(spot, (long) (random.nextDouble() * 8 * HOUR));
+            spots.add(spot);
+        }
+        Collections.shuffle(spots, random);
+        for (ElectricSpot spot : spots) {
+            scheduler.stopCharging(spot);
+        }
+        double empty = scheduler.getTotalAllocatedKw();
+        ElectricSpot single = new ElectricSpot("ONE", 11);
+        scheduler.startCharging(single, HOUR);
+        double one = scheduler.getTotalAllocatedKw();
+        System.out.printf("after 200 sessions start and stop: total %s kW, then one 11 kW session: %s kW%n",
+                empty, one);
+        return empty == 0 && one == 11;
+    }
+
+    private static double weight(long stayMillis) {
+        return 1.0 / Math.max(0.25, (double) stayMillis / HOUR);
+    }
+
+    // Level of the max-min fair allocation, found by bisection.
+    private static double waterLevel(ElectricSpot[] spots, Map<Integer, Long> stays, double budgetKw) {
+        double total = 0;
+        for (int spot : stays.keySet()) {
+            total += spots[spot].getChargerKw();
+        }
+        if (total <= budgetKw) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double low = 0;
+        double high = 1e9;
+        for (int i = 0; i < 200; i++) {
+            double middle = (low + high) / 2;
+            double allocated = 0;
+            for (Map.Entry<Integer, Long> entry : stays.entrySet()) {
+                allocated += Math.min(spots[entry.getKey()].getChargerKw(), weight(entry.getValue()) * middle);
+            }
+            if (allocated > budgetKw) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,186 @@
+package parkinglot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Shares the site's grid power budget among the occupied electric spots.
+ *
+ * Allocation is weighted max-min fair (water-filling): every session gets
+ * min(chargerKw, weight * level), where the level is the largest value that
+ * keeps the total within budget. Shorter expected stays get a larger weight,
+ * so vehicles leaving soon charge faster.
+ *
+ * Sessions are kept sorted by the level at which they saturate
+ * (chargerKw / weight), together with the boundary between saturated and
+ * unsaturated sessions and the sums on each side. An arrival or departure
+ * only moves that boundary by the sessions that actually change side, so
+ * the level is updated in O(log n + moved) instead of from scratch, and the
+ * power of any spot is then computed on demand. The running sums are reset
+ * whenever a side becomes empty and re-derived from the sessions every
+ * {@value #RESUM_INTERVAL} updates, so rounding errors cannot build up.
+ */
+public class ChargingScheduler {
+    private static final double MIN_STAY_HOURS = 0.25;
+    private static final int RESUM_INTERVAL = 1024;
+
+    private double budgetKw;
+    private Map<ElectricSpot, Session> sessions;
+    private TreeSet<Session> bySaturationLevel;
+    private Session boundary;      // first unsaturated session, null if all saturate
+    private double saturatedKw;    // total power of sessions below the boundary
+    private double unsaturatedWeight;
+    private double level;
+    private long nextSessionId;
+    private int updatesSinceResum;
+
+    public ChargingScheduler(double budgetKw) {
+        this.budgetKw = budgetKw;
+        this.sessions = new HashMap<>();
+        this.bySaturationLevel = new TreeSet<>();
+        this.level = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Starts charging the vehicle parked on the spot.
+     */
+    public synchronized void startCharging(ElectricSpot spot, long expectedStayMillis) {
+        if (sessions.containsKey(spot)) {
+            return;
+        }
+        double stayHours = Math.max(MIN_STAY_HOURS, expectedStayMillis / 3_600_000.0);
+        Session session = new Session(nextSessionId++, spot.getChargerKw(), 1.0 / stayHours);
+        sessions.put(spot, session);
+        if (boundary == null || session.compareTo(boundary) < 0) {
+            saturatedKw += session.maxKw;
+        } else {
+            unsaturatedWeight += session.weight;
+        }
+        bySaturationLevel.add(session);
+        rebalance();
+    }
+
+    public synchronized void stopCharging(ElectricSpot spot) {
+        Session session = sessions.remove(spot);
+        if (session == null) {
+            return;
+        }
+        if (boundary == null || session.compareTo(boundary) < 0) {
+            saturatedKw -= session.maxKw;
+        } else {
+            unsaturatedWeight -= session.weight;
+            if (session == boundary) {
+                boundary = bySaturationLevel.higher(session);
+            }
+        }
+        bySaturationLevel.remove(session);
+        rebalance();
+    }
+
+    /**
+     * Power currently allocated to the spot, 0 if it is not charging.
+     */
+    public synchronized double getAllocatedKw(ElectricSpot spot) {
+        Session session = sessions.get(spot);
+        if (session == null) {
+            return 0;
+        }
+        if (boundary == null || session.compareTo(boundary) < 0) {
+            return session.maxKw;
+        }
+        return session.weight * level;
+    }
+
+    public synchronized double getTotalAllocatedKw() {
+        return saturatedKw + (unsaturatedWeight > 0 ? unsaturatedWeight * level : 0);
+    }
+
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void rebalance() {
+        if (++updatesSinceResum >= RESUM_INTERVAL) {
+            resum();
+        }
+        clampSums();
+        updateLevel();
+        // Too much demand: give up saturation from the top of the saturated side.
+        Session last;
+        while ((last = boundary == null ? lastOrNull() : bySaturationLevel.lower(boundary)) != null
+                && last.saturationLevel() > level) {
+            saturatedKw -= last.maxKw;
+            unsaturatedWeight += last.weight;
+            boundary = last;
+            clampSums();
+            updateLevel();
+        }
+        // Spare power: saturate sessions from the bottom of the unsaturated side.
+        while (boundary != null && boundary.saturationLevel() <= level) {
+            saturatedKw += boundary.maxKw;
+            unsaturatedWeight -= boundary.weight;
+            boundary = bySaturationLevel.higher(boundary);
+            clampSums();
+            updateLevel();
+        }
+    }
+
+    // A side with no sessions has a sum of exactly zero, whatever rounding
+    // has left over.
+    private void clampSums() {
+        if (boundary == null) {
+            unsaturatedWeight = 0;
+        }
+        if (bySaturationLevel.isEmpty() || boundary == bySaturationLevel.first()) {
+            saturatedKw = 0;
+        }
+    }
+
+    private void resum() {
+        saturatedKw = 0;
+        unsaturatedWeight = 0;
+        for (Session session : bySaturationLevel) {
+            if (boundary == null || session.compareTo(boundary) < 0) {
+                saturatedKw += session.maxKw;
+            } else {
+                unsaturatedWeight += session.weight;
+            }
+        }
+        updatesSinceResum = 0;
+    }
+
+    private void updateLevel() {
+        if (unsaturatedWeight > 0) {
+            level = (budgetKw - saturatedKw) / unsaturatedWeight;
+        } else {
+            level = saturatedKw <= budgetKw ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private Session lastOrNull() {
+        return bySaturationLevel.isEmpty() ? null : bySaturationLevel.last();
+    }
+
+    private static class Session implements Comparable<Session> {
+        private final long id;
+        private final double maxKw;
+        private final double weight;
+
+        Session(long id, double maxKw, double weight) {
+            this.id = id;
+            this.maxKw = maxKw;
+            this.weight = weight;
+        }
+
+        double saturationLevel() {
+            return maxKw / weight;
+        }
+
+        @Override
+        public int compareTo(Session other) {
+            int byLevel = Double.compare(saturationLevel(), other.saturationLevel());
+            return byLevel != 0 ? byLevel : Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Burst test for {@link DisplayBoardPublisher}.
+ * <ul>
+ * <li>512 cars arrive at once on a floor of 1,000 COMPACT spots; the board
+ * must get far fewer updates than the floor raised events and end up
+ * showing the floor's real free count.</li>
+ * <li>The same through a 1,024-slot ring that a 1,600-event burst
+ * overflows: dropped events must not leave the board stale.</li>
+ * <li>8 threads park and leave for two seconds; the board is updated at
+ * most once per frame and again shows the right count once they stop.</li>
+ * </ul>
+ * Run with {@code java -cp out parkinglot.DisplayBoardBurst}; exits with
+ * status 1 on any violation.
+ */
+public class DisplayBoardBurst {
+    private static final long TICK_MILLIS = 5;
+    private static final long FRAME_MILLIS = 100;
+
+    private static boolean failed;
+
+    public static void main(String[] args) throws InterruptedException {
+        arrivals("arrival burst", 8192, 1000, 512, 0);
+        arrivals("ring overflow", 1024, 2000, 1600, 0);
+        arrivals("sustained churn", 8192, 1000, 400, 2000);
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parks {@code cars} vehicles from 8 threads, then, for churnMillis,
+     * keeps each thread leaving and parking again.
+     */
+    private static void arrivals(String name, int ringCapacity, int spots, int cars, long churnMillis)
+            throws InterruptedException {
+        ParkingLot lot = new ParkingLot(name, "", 0);
+        ParkingFloor floor = new ParkingFloor("F1");
+        for (int i = 0; i < spots; i++) {
+            floor.addParkingSpot(new CompactSpot("C" + i));
+        }
+        lot.addParkingFloor(floor);
+
+        AtomicInteger events = new AtomicInteger();
+        floor.addCapacityListener((changed, type, delta) -> events.incrementAndGet());
+        ParkingDisplayBoard board = new ParkingDisplayBoard("B1", floor);
+        AtomicInteger updates = new AtomicInteger();
+        DisplayBoardPublisher publisher = new DisplayBoardPublisher(ringCapacity, TICK_MILLIS);
+        publisher.addFloor(floor);
+        publisher.subscribe((changed, type, freeCount) -> {
+            if (type == ParkingSpotType.COMPACT) {
+                updates.incrementAndGet();
+            }
+            board.onFreeSpotCount(changed, type, freeCount);
+        }, FRAME_MILLIS);
+        publisher.start();
+        // Let the board take its initial counts before the burst.
+        Thread.sleep(2 * FRAME_MILLIS);
+        updates.set(0);
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        long stopAt = System.currentTimeMillis() + churnMillis;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Vehicle car = new Car(name + t);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                List<ParkingSpot> parked = new ArrayList<>();
+                for (int i = 0; i < cars / threads; i++) {
+                    ParkingSpot spot = floor.tryAcquire(ParkingSpotType.COMPACT);
+                    if (spot != null && floor.assignVehicleToReservedSpot(car, spot)) {
+                        parked.add(spot);
+                    }
+                }
+                while (!parked.isEmpty() && System.currentTimeMillis() < stopAt) {
+                    floor.freeSpot(parked.remove(parked.size() - 1));
+                    ParkingSpot spot = floor.tryAcquire(ParkingSpotType.COMPACT);
+                    if (spot != null && floor.assignVehicleToReservedSpot(car, spot)) {
+                        parked.add(spot);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.currentTimeMillis();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = System.currentTimeMillis() - begin;
+        // A few frames for the last dirty key to go out.
+        Thread.sleep(3 * FRAME_MILLIS);
+        publisher.stop();
+
+        int expected = floor.getFreeSpotCount(ParkingSpotType.COMPACT);
+        int shown = board.getFreeSpotCount(ParkingSpotType.COMPACT);
+        // One update per frame at most, plus the one after the burst.
+        long maxUpdates = elapsedMillis / FRAME_MILLIS + 2;
+        System.out.printf("%s: %,d events in %d ms reached the board as %d COMPACT updates "
+                        + "(at most %d allowed), board shows %d free, floor has %d%n",
+                name, events.get(), elapsedMillis, updates.get(), maxUpdates, shown, expected);
+        check(updates.get() <= maxUpdates && updates.get() * 10 < events.get(), "updates were not coalesced");
+        check(shown == expected, "the board shows a stale count");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package parkinglot;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes free spot counts to display boards.
+ * Floors publish a (floor, type) event into a lock-free ring on every assign
+ * and free. A single drain thread marks those keys dirty per subscriber and,
+ * once a subscriber's frame interval has passed, sends it the current free
+ * count of each dirty key. A burst of 500 arrivals on one floor therefore
+ * reaches each board as a single update per spot type.
+ */
+public class DisplayBoardPublisher implements CapacityListener {
+    private static final int TYPE_COUNT = ParkingSpotType.values().length;
+
+    private CapacityEventRing events;
+    private List<ParkingFloor> floors;
+    private List<Subscription> subscriptions;
+    private long tickMillis;
+    private ScheduledExecutorService drainer;
+
+    public DisplayBoardPublisher(int ringCapacity, long tickMillis) {
+        this.events = new CapacityEventRing(ringCapacity);
+        this.floors = new CopyOnWriteArrayList<>();
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Starts publishing changes of a floor that has already been added to
+     * its parking lot.
+     */
+    public synchronized void addFloor(ParkingFloor floor) {
+        if (floor.getIndex() < 0) {
+            throw new IllegalStateException("Floor " + floor.getName() + " is not part of a parking lot");
+        }
+        while (floors.size() <= floor.getIndex()) {
+            floors.add(null);
+        }
+        floors.set(floor.getIndex(), floor);
+        floor.addCapacityListener(this);
+    }
+
+    /**
+     * Registers a board that wants at most one update per key every
+     * frameIntervalMillis. The board first receives every current count.
+     */
+    public void subscribe(CapacitySubscriber subscriber, long frameIntervalMillis) {
+        Subscription subscription = new Subscription(subscriber, frameIntervalMillis);
+        subscription.markAll(floors.size());
+        subscriptions.add(subscription);
+    }
+
+    public synchronized void start() {
+        if (drainer == null) {
+            drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "display-board-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            drainer.scheduleAtFixedRate(this::drain, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (drainer != null) {
+            drainer.shutdown();
+            drainer = null;
+        }
+    }
+
+    @Override
+    public void onCapacityChanged(ParkingFloor floor, ParkingSpotType type, int delta) {
+        events.offer(floor.getIndex() * TYPE_COUNT + type.ordinal());
+    }
+
+    /**
+     * Runs one frame: collects pending events and flushes due subscribers.
+     * Called by the drain thread. A failing subscriber does not hold up the
+     * others, and an exception never escapes to the scheduler, which would
+     * stop publishing for good.
+     */
+    void drain() {
+        try {
+            events.drain(key -> {
+                for (Subscription subscription : subscriptions) {
+                    subscription.dirty.set(key);
+                }
+            });
+            if (events.resetOverflow()) {
+                for (Subscription subscription : subscriptions) {
+                    subscription.markAll(floors.size());
+                }
+            }
+            long now = System.currentTimeMillis();
+            for (Subscription subscription : subscriptions) {
+                if (now >= subscription.nextFrameAt && !subscription.dirty.isEmpty()) {
+                    flush(subscription);
+                    subscription.nextFrameAt = now + subscription.frameIntervalMillis;
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Display board publisher: " + e);
+        }
+    }
+
+    /**
+     * Sends the subscriber every dirty key. If it throws, the keys not yet
+     * delivered stay dirty and are retried on its next frame.
+     */
+    private void flush(Subscription subscription) {
+        BitSet dirty = subscription.dirty;
+        for (int key = dirty.nextSetBit(0); key >= 0; key = dirty.nextSetBit(key + 1)) {
+            ParkingFloor floor = floors.get(key / TYPE_COUNT);
+            ParkingSpotType type = ParkingSpotType.values()[key % TYPE_COUNT];
+            if (floor != null) {
+                try {
+                    subscription.subscriber.onFreeSpotCount(floor, type, floor.getFreeSpotCount(type));
+                } catch (RuntimeException e) {
+                    System.err.println("Display board subscriber failed: " + e);
+                    return;
+                }
+            }
+            dirty.clear(key);
+        }
+    }
+
+    private static class Subscription {
+        private final CapacitySubscriber subscriber;
+        private final long frameIntervalMillis;
+        // Only touched by the drain thread once the subscription is published.
+        private final BitSet dirty;
+        private long nextFrameAt;
+
+        Subscription(CapacitySubscriber subscriber, long frameIntervalMillis) {
+            this.subscriber = subscriber;
+            this.frameIntervalMillis = frameIntervalMillis;
+            this.dirty = new BitSet();
+        }
+
+        void markAll(int floorCount) {
+            dirty.set(0, floorCount * TYPE_COUNT);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package parkinglot;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free pool of free spots of a single {@link ParkingSpotType}.
+ * Spots that were taken by other means are dropped lazily on the next poll.
+ * A spot is queued at most once: {@link ParkingSpot#markPooled()} guards
+ * every offer, and the mark is cleared before the polled spot is reserved,
+ * so a release that races the poll queues it again rather than losing it.
+ */
+class FreeSpotPool {
+    private final Queue<ParkingSpot> freeSpots;
+    private final AtomicInteger freeCount;
+
+    FreeSpotPool() {
+        this.freeSpots = new ConcurrentLinkedQueue<>();
+        this.freeCount = new AtomicInteger();
+    }
+
+    void add(ParkingSpot spot) {
+        if (spot.isFree() && spot.markPooled()) {
+            freeCount.incrementAndGet();
+            freeSpots.offer(spot);
+        }
+    }
+
+    /**
+     * Reserves and returns a free spot, or null if none is left.
+     */
+    ParkingSpot tryAcquire() {
+        ParkingSpot spot;
+        while ((spot = freeSpots.poll()) != null) {
+            spot.unmarkPooled();
+            if (spot.reserve()) {
+                freeCount.decrementAndGet();
+                return spot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reserves a specific spot chosen by the caller.
+     */
+    boolean claim(ParkingSpot spot) {
+        if (spot.reserve()) {
+            freeCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    boolean release(ParkingSpot spot) {
+        if (spot.release()) {
+            freeCount.incrementAndGet();
+            if (spot.markPooled()) {
+                freeSpots.offer(spot);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    int getFreeCount() {
+        return freeCount.get();
+    }
+}
@@ -0,0 +1,118 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test for concurrent spot allocation on one floor. Many threads
+ * park and leave at once, some through the floor and some through
+ * {@link ParkingSpot#assignVehicle(Vehicle)} or
+ * {@link ParkingFloor#assignVehicleToSpot(Vehicle, ParkingSpot)} directly,
+ * and every spot holder is recorded so a spot handed to two vehicles at
+ * once, or taken from under a panel that reserved it, is caught.
+ * Afterwards every spot must be free again and the floor's free count must
+ * match. Pass {@code store} to run against a floor backed by a
+ * {@link SpotStore}.
+ *
+ * Run with {@code java -cp out parkinglot.FreeSpotStress [threads] [iterations] [store]};
+ * exits with status 1 on any violation.
+ */
+public class FreeSpotStress {
+    private static final int SPOTS = 64;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        ParkingLot lot = new ParkingLot("Stress", "", 0);
+        boolean store = args.length > 2 && args[2].equals("store");
+        ParkingFloor floor = store ? new ParkingFloor("F1", new SpotStore(SPOTS)) : new ParkingFloor("F1");
+        List<ParkingSpot> spots = new ArrayList<>();
+        for (int i = 0; i < SPOTS; i++) {
+            floor.addParkingSpot("C" + i, ParkingSpotType.COMPACT);
+            spots.add(floor.getSpot(i));
+        }
+        lot.addParkingFloor(floor);
+
+        ConcurrentHashMap<ParkingSpot, Vehicle> holders = new ConcurrentHashMap<>();
+        AtomicInteger doubleAssignments = new AtomicInteger();
+        AtomicInteger parked = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Vehicle car = new Car("S" + Thread.currentThread().getId());
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < iterations; i++) {
+                    ParkingSpot spot;
+                    int path = random.nextInt(8);
+                    if (path == 0) {
+                        spot = spots.get(random.nextInt(SPOTS));
+                        if (!spot.assignVehicle(car)) {
+                            continue;
+                        }
+                    } else if (path == 1) {
+                        // Direct assignment racing the panels' tryAcquire:
+                        // it must never take a spot a panel has reserved.
+                        spot = spots.get(random.nextInt(SPOTS));
+                        if (!floor.assignVehicleToSpot(car, spot)) {
+                            continue;
+                        }
+                    } else {
+                        spot = floor.tryAcquire(ParkingSpotType.COMPACT);
+                        if (spot == null) {
+                            continue;
+                        }
+                        if (!floor.assignVehicleToReservedSpot(car, spot)) {
+                            doubleAssignments.incrementAndGet();
+                            continue;
+                        }
+                    }
+                    if (holders.putIfAbsent(spot, car) != null || spot.getVehicle() != car) {
+                        doubleAssignments.incrementAndGet();
+                    }
+                    parked.incrementAndGet();
+                    holders.remove(spot, car);
+                    if (random.nextBoolean()) {
+                        spot.removeVehicle();
+                    } else {
+                        floor.freeSpot(spot);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+
+        int notFree = 0;
+        for (ParkingSpot spot : spots) {
+            if (!spot.isFree() || spot.getVehicle() != null) {
+                notFree++;
+            }
+        }
+        int floorFree = floor.getFreeSpotCount(ParkingSpotType.COMPACT);
+        int lotFree = lot.getFreeSpotCount(ParkingSpotType.COMPACT);
+        System.out.printf("%d threads, %s spots, %,d parkings in %d ms%n",
+                threads, store ? "store" : "object", parked.get(), elapsedMillis);
+        System.out.printf("double assignments %d, spots left taken %d, free count floor %d lot %d of %d%n",
+                doubleAssignments.get(), notFree, floorFree, lotFree, SPOTS);
+        if (doubleAssignments.get() != 0 || notFree != 0 || floorFree != SPOTS || lotFree != SPOTS) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Asynchronous front door for entrance and exit panels.
+ * Panels submit requests into a bounded queue and get a future back right
+ * away. A few worker threads drain the queue in batches: arrivals whose spot
+ * type is already full are turned away without touching the floors, and
+ * departures are settled together through {@link ParkingLot#settleTickets}.
+ * When the queue is full the request is rejected immediately, so a surge
+ * pushes back on the panels instead of piling up in memory.
+ * Every accepted request is completed: either by a worker or, once the
+ * dispatcher is stopped, by rejection.
+ */
+public class GateDispatcher {
+    private final ParkingLot parkingLot;
+    private final BlockingQueue<GateRequest> requests;
+    private final int batchSize;
+    private final int workerCount;
+    private final List<Thread> workers;
+    // Submitters hold the read lock while they enqueue, so no request can
+    // slip into the queue after stop() has closed it.
+    private final ReadWriteLock submitLock;
+    private volatile boolean running;
+
+    public GateDispatcher(ParkingLot parkingLot, int queueCapacity, int workerCount, int batchSize) {
+        this.parkingLot = parkingLot;
+        this.requests = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.workerCount = workerCount;
+        this.workers = new ArrayList<>();
+        this.submitLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Starts the workers. A stopped dispatcher can be started again.
+     */
+    public synchronized void start() {
+        if (!running) {
+            for (int i = 0; i < workerCount; i++) {
+                Thread worker = new Thread(this::work, "gate-worker-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+            }
+            running = true;
+            for (Thread worker : workers) {
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the workers; requests still queued are rejected.
+     */
+    public synchronized void stop() throws InterruptedException {
+        submitLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            submitLock.writeLock().unlock();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+            worker.join();
+        }
+        workers.clear();
+        GateRequest request;
+        while ((request = requests.poll()) != null) {
+            request.future.completeExceptionally(new RejectedExecutionException("Gate dispatcher stopped"));
+        }
+    }
+
+    /**
+     * Completes with the new ticket, or with null when the lot is full.
+     */
+    public CompletableFuture<ParkingTicket> submitEntry(EntrancePanel entrance, Vehicle vehicle) {
+        CompletableFuture<ParkingTicket> future = new CompletableFuture<>();
+        submit(new GateRequest(entrance, vehicle, null, future));
+        return future;
+    }
+
+    /**
+     * Completes with the fee charged, or -1 when the ticket was not active.
+     */
+    public CompletableFuture<Double> submitExit(ParkingTicket ticket) {
+        CompletableFuture<Double> future = new CompletableFuture<>();
+        submit(new GateRequest(null, null, ticket, future));
+        return future;
+    }
+
+    public int getQueuedRequestCount() {
+        return requests.size();
+    }
+
+    private void submit(GateRequest request) {
+        boolean queued;
+        submitLock.readLock().lock();
+        try {
+            if (!running) {
+                request.future.completeExceptionally(new RejectedExecutionException("Gate dispatcher is not running"));
+                return;
+            }
+            queued = requests.offer(request);
+        } finally {
+            submitLock.readLock().unlock();
+        }
+        if (!queued) {
+            request.future.completeExceptionally(new RejectedExecutionException("Gate queue is full"));
+        }
+    }
+
+    private void work() {
+        List<GateRequest> batch = new ArrayList<>(batchSize);
+        List<ParkingTicket> exits = new ArrayList<>(batchSize);
+        double[] fees = new double[batchSize];
+        while (running) {
+            try {
+                GateRequest first = requests.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                requests.drainTo(batch, batchSize - 1);
+                process(batch, exits, fees);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                for (GateRequest request : batch) {
+                    request.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+                exits.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(List<GateRequest> batch, List<ParkingTicket> exits, double[] fees) {
+        // Exits first: they free the spots the arrivals in this batch need.
+        for (GateRequest request : batch) {
+            if (request.ticket != null) {
+                exits.add(request.ticket);
+            }
+        }
+        if (!exits.isEmpty()) {
+            parkingLot.settleTickets(exits, fees);
+        }
+        // Capacity is checked once per vehicle type for the whole batch.
+        boolean[] full = new boolean[VehicleType.values().length];
+        boolean[] checked = new boolean[full.length];
+        int exit = 0;
+        for (GateRequest request : batch) {
+            if (request.ticket != null) {
+                ((CompletableFuture<Double>) request.future).complete(fees[exit++]);
+                continue;
+            }
+            VehicleType vehicleType = request.vehicle.getType();
+            int type = vehicleType.ordinal();
+            if (!checked[type]) {
+                full[type] = !parkingLot.hasFreeSpotFor(vehicleType);
+                checked[type] = true;
+            }
+            ParkingTicket ticket = null;
+            if (!full[type]) {
+                ticket = parkingLot.getNewParkingTicket(request.vehicle, request.entrance);
+                full[type] = ticket == null;
+            }
+            ((CompletableFuture<ParkingTicket>) request.future).complete(ticket);
+        }
+    }
+
+    private static class GateRequest {
+        private final EntrancePanel entrance;
+        private final Vehicle vehicle;
+        private final ParkingTicket ticket;
+        private final CompletableFuture<?> future;
+
+        GateRequest(EntrancePanel entrance, Vehicle vehicle, ParkingTicket ticket, CompletableFuture<?> future) {
+            this.entrance = entrance;
+            this.vehicle = vehicle;
+            this.ticket = ticket;
+            this.future = future;
+        }
+    }
+}
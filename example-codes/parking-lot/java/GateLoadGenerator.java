@@ -0,0 +1,146 @@
+package parkinglot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for {@link GateDispatcher}. Simulates N panels, each
+ * alternating arrivals and departures through the dispatcher, and reports
+ * gate latency percentiles along with the requests turned away by
+ * backpressure or a full lot.
+ *
+ * It then checks that a duplicate exit reports -1, and that requests
+ * submitted while the dispatcher is stopped and restarted are all
+ * completed.
+ *
+ * Run with {@code java -cp out parkinglot.GateLoadGenerator [panels] [requestsPerPanel] [workers]};
+ * exits with status 1 if a check fails.
+ */
+public class GateLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        int panels = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int requestsPerPanel = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        ParkingLot lot = new ParkingLot("Gates", "", 0);
+        for (int f = 0; f < 4; f++) {
+            ParkingFloor floor = new ParkingFloor("F" + f);
+            for (int i = 0; i < 5_000; i++) {
+                floor.addParkingSpot(new CompactSpot("C" + i));
+            }
+            lot.addParkingFloor(floor);
+        }
+        GateDispatcher dispatcher = new GateDispatcher(lot, 4096, workers, 64);
+        dispatcher.start();
+
+        EntrancePanel entrance = new EntrancePanel("E1");
+        long[][] latencies = new long[panels][requestsPerPanel];
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger full = new AtomicInteger();
+        Thread[] threads = new Thread[panels];
+        for (int p = 0; p < panels; p++) {
+            int panel = p;
+            threads[p] = new Thread(() -> {
+                Deque<ParkingTicket> parked = new ArrayDeque<>();
+                Random random = new Random(panel);
+                for (int i = 0; i < requestsPerPanel; i++) {
+                    long start = System.nanoTime();
+                    try {
+                        if (parked.size() < 400 && random.nextBoolean()) {
+                            ParkingTicket ticket = dispatcher.submitEntry(entrance, new Car("P" + panel + "-" + i)).get();
+                            if (ticket == null) {
+                                full.incrementAndGet();
+                            } else {
+                                parked.add(ticket);
+                            }
+                        } else if (!parked.isEmpty()) {
+                            dispatcher.submitExit(parked.poll()).get();
+                        }
+                    } catch (ExecutionException e) {
+                        rejected.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    latencies[panel][i] = System.nanoTime() - start;
+                }
+            });
+            threads[p].start();
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d panels, %,d requests in %d ms: p50 %d us, p99 %d us, p99.9 %d us, "
+                        + "rejected %d, lot full %d%n",
+                panels, all.length, elapsedMillis, percentile(all, 0.50) / 1000,
+                percentile(all, 0.99) / 1000, percentile(all, 0.999) / 1000, rejected.get(), full.get());
+
+        boolean ok = true;
+        ParkingTicket ticket = dispatcher.submitEntry(entrance, new Car("TWICE")).get();
+        double first = dispatcher.submitExit(ticket).get();
+        double second = dispatcher.submitExit(ticket).get();
+        System.out.printf("duplicate exit: first %.2f, second %.2f%n", first, second);
+        ok &= first >= 0 && second == -1;
+
+        ok &= stopWhileSubmitting(dispatcher, entrance);
+        dispatcher.stop();
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    // Stops and restarts the dispatcher while panels keep submitting; every
+    // future must complete, with a ticket, null or a rejection.
+    private static boolean stopWhileSubmitting(GateDispatcher dispatcher, EntrancePanel entrance)
+            throws InterruptedException {
+        List<CompletableFuture<ParkingTicket>> futures = new ArrayList<>();
+        Thread[] submitters = new Thread[8];
+        for (int t = 0; t < submitters.length; t++) {
+            int id = t;
+            submitters[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    CompletableFuture<ParkingTicket> future = dispatcher.submitEntry(entrance, new Car("S" + id + "-" + i));
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                }
+            });
+            submitters[t].start();
+        }
+        for (int cycle = 0; cycle < 20; cycle++) {
+            dispatcher.stop();
+            dispatcher.start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        int stranded = 0;
+        for (CompletableFuture<ParkingTicket> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // rejected while stopped or queue full
+            } catch (TimeoutException e) {
+                stranded++;
+            }
+        }
+        System.out.printf("20 stop/start cycles under load: %,d requests, %d never completed%n",
+                futures.size(), stranded);
+        return stranded == 0;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+}
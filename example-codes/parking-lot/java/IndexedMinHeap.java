@@ -0,0 +1,119 @@
+package parkinglot;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of spot indexes ordered by an int key, with a position
+ * table so any member can be removed in O(log n). Not thread-safe.
+ */
+class IndexedMinHeap {
+    private int[] heap;
+    private int[] positions; // spot index -> slot in heap, or -1
+    private int[] keys;      // spot index -> key
+    private int size;
+
+    IndexedMinHeap() {
+        this.heap = new int[16];
+        this.positions = new int[16];
+        this.keys = new int[16];
+        Arrays.fill(positions, -1);
+    }
+
+    boolean contains(int index) {
+        return index < positions.length && positions[index] >= 0;
+    }
+
+    void insert(int index, int key) {
+        ensureIndexCapacity(index);
+        if (positions[index] >= 0) {
+            return;
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        keys[index] = key;
+        heap[size] = index;
+        positions[index] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * Returns the index with the smallest key, or -1 if the heap is empty.
+     */
+    int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    void remove(int index) {
+        if (!contains(index)) {
+            return;
+        }
+        int slot = positions[index];
+        positions[index] = -1;
+        size--;
+        if (slot == size) {
+            return;
+        }
+        heap[slot] = heap[size];
+        positions[heap[slot]] = slot;
+        siftDown(slot);
+        siftUp(slot);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!less(heap[slot], heap[parent])) {
+                break;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int smallest = slot;
+            int left = 2 * slot + 1;
+            int right = left + 1;
+            if (left < size && less(heap[left], heap[smallest])) {
+                smallest = left;
+            }
+            if (right < size && less(heap[right], heap[smallest])) {
+                smallest = right;
+            }
+            if (smallest == slot) {
+                return;
+            }
+            swap(slot, smallest);
+            slot = smallest;
+        }
+    }
+
+    // Ties go to the lower spot index so the order is deterministic.
+    private boolean less(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+    }
+
+    private void swap(int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+        positions[heap[i]] = i;
+        positions[heap[j]] = j;
+    }
+
+    private void ensureIndexCapacity(int index) {
+        if (index >= positions.length) {
+            int length = Math.max(index + 1, positions.length * 2);
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, length);
+            Arrays.fill(positions, oldLength, length, -1);
+            keys = Arrays.copyOf(keys, length);
+        }
+    }
+}
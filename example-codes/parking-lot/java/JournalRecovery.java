@@ -0,0 +1,235 @@
+package parkinglot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Crash recovery test for {@link ParkingJournal}.
+ * <ul>
+ * <li>A child JVM writes 1,000,000 issue/pay/free events against 108,000
+ * spots on 4 floors, records the lot's active tickets and halts without
+ * closing the journal. A fresh lot is then recovered from the journal
+ * alone, and again from a snapshot plus an empty journal; both must match
+ * the tickets, spots and plates at the crash.</li>
+ * <li>4 threads issue, settle and release tickets while another takes
+ * snapshots back to back; recovering afterwards must give back exactly
+ * the tickets that were active.</li>
+ * </ul>
+ * Run with {@code java -cp out parkinglot.JournalRecovery}; exits with
+ * status 1 on any violation.
+ */
+public class JournalRecovery {
+    private static final int FLOORS = 4;
+    private static final int EVENTS = 1_000_000;
+
+    private static boolean failed;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("crash")) {
+            writeAndHalt(Path.of(args[1]));
+            return;
+        }
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            crashAndRecover(directory.resolve("crash"));
+            snapshotsUnderLoad(directory.resolve("load"));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void crashAndRecover(Path directory) throws Exception {
+        Process child = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), JournalRecovery.class.getName(),
+                "crash", directory.toString()).inheritIO().start();
+        if (child.waitFor() != 0) {
+            check(false, "the writing JVM failed");
+            return;
+        }
+        List<String> expected = Files.readAllLines(directory.resolve("expected.txt"), StandardCharsets.US_ASCII);
+
+        ParkingLot lot = newLot();
+        long start = System.nanoTime();
+        int restored;
+        try (ParkingJournal journal = new ParkingJournal(directory, 100)) {
+            restored = journal.recover(lot);
+            long journalMillis = (System.nanoTime() - start) / 1_000_000;
+            check(state(lot).equals(expected) && freeCountsMatch(lot), "recovery from the journal lost state");
+            journal.snapshot(lot);
+            System.out.printf("crash after %,d events: %,d tickets recovered from the journal in %d ms%n",
+                    EVENTS, restored, journalMillis);
+        }
+
+        lot = newLot();
+        start = System.nanoTime();
+        try (ParkingJournal journal = new ParkingJournal(directory, 100)) {
+            restored = journal.recover(lot);
+        }
+        System.out.printf("crash after %,d events: %,d tickets recovered from the snapshot in %d ms%n",
+                EVENTS, restored, (System.nanoTime() - start) / 1_000_000);
+        check(state(lot).equals(expected) && freeCountsMatch(lot), "recovery from the snapshot lost state");
+    }
+
+    /**
+     * Runs in the child JVM: writes the events, records the expected state
+     * and halts as a crash would, without closing the journal.
+     */
+    private static void writeAndHalt(Path directory) throws IOException {
+        ParkingLot lot = newLot();
+        ParkingJournal journal = new ParkingJournal(directory, 100);
+        lot.setJournal(journal);
+        Random random = new Random(9);
+        List<ParkingTicket> parked = new ArrayList<>();
+        for (int event = 0; event < EVENTS; event++) {
+            // Fill to about half the spots, then keep arrivals and departures level.
+            if (parked.size() < 54_000 && (parked.size() < 50_000 || random.nextBoolean())) {
+                ParkingTicket ticket = lot.getNewParkingTicket(newVehicle(random, "P" + event));
+                if (ticket != null) {
+                    parked.add(ticket);
+                }
+            } else {
+                int i = random.nextInt(parked.size());
+                ParkingTicket ticket = parked.get(i);
+                parked.set(i, parked.get(parked.size() - 1));
+                parked.remove(parked.size() - 1);
+                if (random.nextInt(10) < 7) {
+                    lot.settleTicket(ticket);
+                } else {
+                    lot.releaseTicket(ticket);
+                }
+            }
+        }
+        Files.write(directory.resolve("expected.txt"), state(lot), StandardCharsets.US_ASCII);
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void snapshotsUnderLoad(Path directory) throws Exception {
+        ParkingLot lot = newLot();
+        ParkingJournal journal = new ParkingJournal(directory, 10);
+        lot.setJournal(journal);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(20 + t);
+            int thread = t;
+            threads.add(new Thread(() -> {
+                List<ParkingTicket> parked = new ArrayList<>();
+                for (int i = 0; running.get(); i++) {
+                    if (parked.size() < 2_000 && random.nextBoolean()) {
+                        ParkingTicket ticket = lot.getNewParkingTicket(newVehicle(random, "T" + thread + "-" + i));
+                        if (ticket != null) {
+                            parked.add(ticket);
+                        }
+                    } else if (!parked.isEmpty()) {
+                        ParkingTicket ticket = parked.remove(random.nextInt(parked.size()));
+                        if (random.nextBoolean()) {
+                            lot.settleTicket(ticket);
+                        } else {
+                            lot.releaseTicket(ticket);
+                        }
+                    }
+                }
+            }));
+        }
+        int[] snapshots = new int[1];
+        Thread snapshotter = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    journal.snapshot(lot);
+                    snapshots[0]++;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        snapshotter.start();
+        Thread.sleep(3000);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        snapshotter.join();
+        journal.close();
+        List<String> expected = state(lot);
+
+        ParkingLot recovered = newLot();
+        try (ParkingJournal reopened = new ParkingJournal(directory, 10)) {
+            reopened.recover(recovered);
+        }
+        List<String> actual = state(recovered);
+        System.out.printf("snapshots under load: %d snapshots, %,d tickets active, %,d recovered%n",
+                snapshots[0], expected.size(), actual.size());
+        check(actual.equals(expected) && freeCountsMatch(recovered), "a snapshot lost or revived a ticket");
+    }
+
+    private static ParkingLot newLot() {
+        ParkingLot lot = new ParkingLot("Journal", "", 0);
+        for (int f = 0; f < FLOORS; f++) {
+            ParkingFloor floor = new ParkingFloor("F" + f);
+            for (int i = 0; i < 27_000; i++) {
+                ParkingSpotType type = i < 20_000 ? ParkingSpotType.COMPACT
+                        : i < 25_000 ? ParkingSpotType.LARGE : ParkingSpotType.MOTORBIKE;
+                floor.addParkingSpot("F" + f + "-" + i, type);
+            }
+            lot.addParkingFloor(floor);
+        }
+        return lot;
+    }
+
+    private static Vehicle newVehicle(Random random, String plate) {
+        int kind = random.nextInt(10);
+        return kind < 7 ? new Car(plate) : kind < 9 ? new Van(plate) : new Motorbike(plate);
+    }
+
+    /**
+     * One line per active ticket, by ticket id: id, floor, spot and plate.
+     */
+    private static List<String> state(ParkingLot lot) {
+        TreeMap<Long, String> tickets = new TreeMap<>();
+        lot.forEachActiveTicket(ticket -> {
+            ParkingSpot spot = ticket.getParkingSpot();
+            Vehicle vehicle = spot.getVehicle();
+            tickets.put(ticket.getTicketId(), ticket.getTicketId() + " " + ticket.getParkingFloor().getIndex() + " "
+                    + spot.getIndex() + " " + (vehicle == null ? "-" : vehicle.getLicenseNumber()));
+        });
+        return new ArrayList<>(tickets.values());
+    }
+
+    private static boolean freeCountsMatch(ParkingLot lot) {
+        int[] parked = new int[lot.getParkingFloorCount() * ParkingSpotType.values().length];
+        lot.forEachActiveTicket(ticket -> parked[ticket.getParkingFloor().getIndex()
+                * ParkingSpotType.values().length + ticket.getParkingSpot().getType().ordinal()]++);
+        for (int f = 0; f < lot.getParkingFloorCount(); f++) {
+            ParkingFloor floor = lot.getParkingFloor(f);
+            for (ParkingSpotType type : ParkingSpotType.values()) {
+                int taken = parked[f * ParkingSpotType.values().length + type.ordinal()];
+                if (floor.getFreeSpotCount(type) != floor.getSpotCount(type) - taken) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            failed = true;
+        }
+    }
+}
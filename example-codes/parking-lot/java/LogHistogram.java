@@ -0,0 +1,98 @@
+package parkinglot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of non-negative long values with log-linear buckets,
+ * in the style of HdrHistogram: every power of two is split into 16 equal
+ * sub-buckets, so any recorded value is reported within 6.25% of its true
+ * value. Recording is one array increment with no allocation; counts are
+ * striped by thread so gates recording at once rarely share a cache line.
+ */
+public class LogHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+    private static final int STRIPES = 4;
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKET_COUNT);
+
+    public void record(long value) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKET_COUNT + bucketOf(Math.max(0, value)));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * The value below which the given percentage of recorded values fall,
+     * rounded up to the top of its bucket; 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] merged = merge();
+        long total = 0;
+        for (long count : merged) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += merged[bucket];
+            if (seen >= rank) {
+                return highestValueIn(bucket);
+            }
+        }
+        return highestValueIn(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Appends "count p50 p90 p99 p99.9 max" for this histogram.
+     */
+    void appendTo(StringBuilder out, String name) {
+        out.append(name)
+                .append(" count=").append(getCount())
+                .append(" p50=").append(getValueAtPercentile(50))
+                .append(" p90=").append(getValueAtPercentile(90))
+                .append(" p99=").append(getValueAtPercentile(99))
+                .append(" p99.9=").append(getValueAtPercentile(99.9))
+                .append(" max=").append(getValueAtPercentile(100))
+                .append('\n');
+    }
+
+    private long[] merge() {
+        long[] merged = new long[BUCKET_COUNT];
+        for (int i = 0; i < counts.length(); i++) {
+            merged[i % BUCKET_COUNT] += counts.get(i);
+        }
+        return merged;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        // Values in [2^e, 2^(e+1)) land in row e - SUB_BITS + 1, split by
+        // the SUB_BITS bits below the leading one.
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long low = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return low + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,156 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out the free spot closest to the entrance the vehicle came through.
+ * For every spot type there is one indexed min-heap per entrance, keyed by
+ * the distance from that entrance, so both picking the closest spot and
+ * putting a freed spot back take O(entrances * log n). Each spot type has
+ * its own lock, so panels parking different vehicle types do not contend.
+ */
+public class NearestSpotStrategy implements SpotAssignmentStrategy {
+
+    /**
+     * Distance of a spot from an entrance, e.g. in metres of driving path.
+     */
+    public interface DistanceFunction {
+        int distance(EntrancePanel entrance, ParkingSpot spot);
+    }
+
+    private List<EntrancePanel> entrances;
+    private Map<String, Integer> entranceSlots;
+    private DistanceFunction distanceFunction;
+    private Map<ParkingSpotType, TypeIndex> indexes;
+
+    public NearestSpotStrategy(List<EntrancePanel> entrances, DistanceFunction distanceFunction) {
+        if (entrances.isEmpty()) {
+            throw new IllegalArgumentException("At least one entrance is required");
+        }
+        this.entrances = new ArrayList<>(entrances);
+        this.entranceSlots = new HashMap<>();
+        for (int i = 0; i < entrances.size(); i++) {
+            entranceSlots.put(entrances.get(i).getId(), i);
+        }
+        this.distanceFunction = distanceFunction;
+        this.indexes = new EnumMap<>(ParkingSpotType.class);
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            indexes.put(type, new TypeIndex(entrances.size()));
+        }
+    }
+
+    @Override
+    public void addSpot(ParkingSpot spot) {
+        int[] distances = new int[entrances.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = distanceFunction.distance(entrances.get(i), spot);
+        }
+        indexes.get(spot.getType()).add(spot, distances);
+    }
+
+    /**
+     * Unknown entrances fall back to the first one.
+     */
+    @Override
+    public ParkingSpot tryAcquire(ParkingSpotType type, EntrancePanel entrance) {
+        Integer slot = entrance == null ? null : entranceSlots.get(entrance.getId());
+        return indexes.get(type).acquireNearest(slot == null ? 0 : slot);
+    }
+
+    @Override
+    public boolean claim(ParkingSpot spot) {
+        return indexes.get(spot.getType()).claim(spot);
+    }
+
+    @Override
+    public boolean release(ParkingSpot spot) {
+        return indexes.get(spot.getType()).release(spot);
+    }
+
+    @Override
+    public int getFreeSpotCount(ParkingSpotType type) {
+        return indexes.get(type).freeCount();
+    }
+
+    /**
+     * Free spots of one type, as seen from every entrance.
+     * Invariant: a spot is in the heaps if and only if it is free.
+     */
+    private static class TypeIndex {
+        private IndexedMinHeap[] heaps;
+        private List<ParkingSpot> spots;   // by spot index, sparse
+        private List<int[]> distances;     // by spot index, sparse
+
+        TypeIndex(int entranceCount) {
+            this.heaps = new IndexedMinHeap[entranceCount];
+            for (int i = 0; i < entranceCount; i++) {
+                heaps[i] = new IndexedMinHeap();
+            }
+            this.spots = new ArrayList<>();
+            this.distances = new ArrayList<>();
+        }
+
+        synchronized void add(ParkingSpot spot, int[] spotDistances) {
+            int index = spot.getIndex();
+            while (spots.size() <= index) {
+                spots.add(null);
+                distances.add(null);
+            }
+            spots.set(index, spot);
+            distances.set(index, spotDistances);
+            if (spot.isFree()) {
+                insert(index);
+            }
+        }
+
+        synchronized ParkingSpot acquireNearest(int entranceSlot) {
+            IndexedMinHeap heap = heaps[entranceSlot];
+            while (heap.size() > 0) {
+                int index = heap.peek();
+                removeEverywhere(index);
+                ParkingSpot spot = spots.get(index);
+                if (spot.reserve()) {
+                    return spot;
+                }
+            }
+            return null;
+        }
+
+        synchronized boolean claim(ParkingSpot spot) {
+            if (spot.reserve()) {
+                removeEverywhere(spot.getIndex());
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean release(ParkingSpot spot) {
+            if (spot.release()) {
+                insert(spot.getIndex());
+                return true;
+            }
+            return false;
+        }
+
+        synchronized int freeCount() {
+            return heaps[0].size();
+        }
+
+        private void insert(int index) {
+            int[] spotDistances = distances.get(index);
+            for (int i = 0; i < heaps.length; i++) {
+                heaps[i].insert(index, spotDistances[i]);
+            }
+        }
+
+        private void removeEverywhere(int index) {
+            for (IndexedMinHeap heap : heaps) {
+                heap.remove(index);
+            }
+        }
+    }
+}
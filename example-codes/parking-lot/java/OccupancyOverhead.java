@@ -0,0 +1,190 @@
+package parkinglot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Measures what {@link OccupancyRecorder} costs and checks what it records.
+ * <ul>
+ * <li>Park-and-leave throughput on 100 floors with the recorder stopped
+ * and running, and the time one sample of those floors takes on the
+ * sampler thread.</li>
+ * <li>Two hours of samples following a sine wave on one floor: the window
+ * peaks and averages must match the wave, and the saved file size is
+ * reported.</li>
+ * <li>A sample that throws must not stop the ones after it.</li>
+ * </ul>
+ * Run with {@code java -cp out parkinglot.OccupancyOverhead}; exits with
+ * status 1 on any violation.
+ */
+public class OccupancyOverhead {
+    private static boolean failed;
+
+    public static void main(String[] args) throws Exception {
+        hotPath();
+        sineWave();
+        failingSample();
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void hotPath() throws IOException {
+        ParkingLot lot = new ParkingLot("Overhead", "", 0);
+        for (int f = 0; f < 100; f++) {
+            ParkingFloor floor = new ParkingFloor("F" + f);
+            for (int i = 0; i < 1000; i++) {
+                floor.addParkingSpot(new CompactSpot("F" + f + "C" + i));
+            }
+            lot.addParkingFloor(floor);
+        }
+        OccupancyRecorder recorder = new OccupancyRecorder(lot, null);
+        double stopped = 0;
+        double running = 0;
+        for (int round = 0; round < 3; round++) {
+            stopped = parkAndLeave(lot, 2000);
+            recorder.start();
+            running = parkAndLeave(lot, 2000);
+            recorder.stop();
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            recorder.sample();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            recorder.sample();
+        }
+        double sampleMicros = (System.nanoTime() - start) / 1000 / 1e3;
+        System.out.printf("hot path on 100 floors: %.2f M park+leave/s with the recorder stopped, %.2f M running; "
+                        + "one sample of every floor takes %.1f us (%.4f%% of the sampler's second)%n",
+                stopped / 1e6, running / 1e6, sampleMicros, sampleMicros / 1e4);
+        // Timing noise on a shared machine is a few percent either way.
+        check(running > stopped * 0.9, "the recorder slowed the hot path");
+    }
+
+    /**
+     * Parks and frees spots on every floor in turn for durationMillis and
+     * returns the operations per second.
+     */
+    private static double parkAndLeave(ParkingLot lot, long durationMillis) {
+        Vehicle car = new Car("HOT");
+        Deque<ParkingSpot> parked = new ArrayDeque<>();
+        int floors = lot.getParkingFloorCount();
+        long operations = 0;
+        long start = System.nanoTime();
+        long end = start + durationMillis * 1_000_000;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 10_000; i++) {
+                ParkingFloor floor = lot.getParkingFloor((int) (operations % floors));
+                ParkingSpot spot = floor.tryAcquire(ParkingSpotType.COMPACT);
+                if (spot != null && floor.assignVehicleToReservedSpot(car, spot)) {
+                    parked.add(spot);
+                }
+                if (parked.size() > 20_000) {
+                    parked.poll().removeVehicle();
+                }
+                operations++;
+            }
+        }
+        double perSecond = operations / ((System.nanoTime() - start) / 1e9);
+        while (!parked.isEmpty()) {
+            parked.poll().removeVehicle();
+        }
+        return perSecond;
+    }
+
+    private static void sineWave() throws IOException {
+        ParkingLot lot = new ParkingLot("Sine", "", 0);
+        ParkingFloor floor = new ParkingFloor("F1");
+        for (int i = 0; i < 200; i++) {
+            floor.addParkingSpot(new CompactSpot("C" + i));
+        }
+        lot.addParkingFloor(floor);
+        OccupancyRecorder recorder = new OccupancyRecorder(lot, null);
+
+        // Two hours of seconds; occupancy = 100 + 80 sin(2 pi t / 20 min).
+        Vehicle car = new Car("SINE");
+        Deque<ParkingSpot> parked = new ArrayDeque<>();
+        int seconds = 2 * 3600;
+        int lastHourPeak = 0;
+        double lastHourSum = 0;
+        for (int t = 0; t < seconds; t++) {
+            int target = (int) Math.round(100 + 80 * Math.sin(2 * Math.PI * t / 1200));
+            while (parked.size() < target) {
+                ParkingSpot spot = floor.tryAcquire(ParkingSpotType.COMPACT);
+                floor.assignVehicleToReservedSpot(car, spot);
+                parked.push(spot);
+            }
+            while (parked.size() > target) {
+                floor.freeSpot(parked.pop());
+            }
+            recorder.sample();
+            if (t >= seconds - 3600) {
+                lastHourPeak = Math.max(lastHourPeak, target);
+                lastHourSum += target;
+            }
+        }
+        int peak = recorder.getPeakOccupancy(floor, ParkingSpotType.COMPACT, 3600 * 1000L);
+        double average = recorder.getAverageOccupancy(floor, ParkingSpotType.COMPACT, 3600 * 1000L);
+        int dayPeak = recorder.getPeakOccupancy(floor, ParkingSpotType.COMPACT, 24 * 3600 * 1000L);
+        double dayAverage = recorder.getAverageOccupancy(floor, ParkingSpotType.COMPACT, 24 * 3600 * 1000L);
+
+        Path file = Files.createTempFile("occupancy", ".bin");
+        recorder.save(file);
+        long size = Files.size(file);
+        Files.delete(file);
+        System.out.printf("2 h sine wave: last hour peak %d (expected %d), average %.2f (expected %.2f); "
+                        + "by minute peak %d, average %.2f; file for one floor %,d bytes%n",
+                peak, lastHourPeak, average, lastHourSum / 3600, dayPeak, dayAverage, size);
+        check(peak == lastHourPeak && Math.abs(average - lastHourSum / 3600) < 0.01,
+                "last hour does not match the wave");
+        // Over whole periods of the wave the minute averages settle on the midline.
+        check(dayPeak == 180 && Math.abs(dayAverage - 100) < 0.5, "minute rings do not match the wave");
+    }
+
+    private static void failingSample() throws Exception {
+        // The second sample fails, as a floor being added at that moment
+        // might make it.
+        int[] calls = new int[1];
+        ParkingLot lot = new ParkingLot("Failing", "", 0) {
+            @Override
+            int getParkingFloorCount() {
+                if (++calls[0] == 2) {
+                    throw new IllegalStateException("floor list changed");
+                }
+                return super.getParkingFloorCount();
+            }
+        };
+        ParkingFloor floor = new ParkingFloor("F1");
+        for (int i = 0; i < 20; i++) {
+            floor.addParkingSpot(new CompactSpot("C" + i));
+        }
+        lot.addParkingFloor(floor);
+        for (int i = 0; i < 5; i++) {
+            floor.getSpot(i).assignVehicle(new Car("A" + i));
+        }
+        OccupancyRecorder recorder = new OccupancyRecorder(lot, null);
+        recorder.start();
+        Thread.sleep(1500);
+        for (int i = 5; i < 10; i++) {
+            floor.getSpot(i).assignVehicle(new Car("B" + i));
+        }
+        Thread.sleep(2000);
+        recorder.stop();
+        int peak = recorder.getPeakOccupancy(floor, ParkingSpotType.COMPACT, 1000);
+        System.out.printf("failing sample: %d samples attempted, last occupancy seen %d (expected 10)%n",
+                calls[0], peak);
+        check(calls[0] >= 3 && peak == 10, "sampling stopped after a failed sample");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            failed = true;
+        }
+    }
+}
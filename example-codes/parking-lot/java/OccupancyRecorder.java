@@ -0,0 +1,271 @@
+package parkinglot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process history of occupancy per floor and spot type.
+ *
+ * A background thread samples the free spot counters once a second, so the
+ * assign/free hot path is not touched at all. Samples go into fixed-size
+ * ring buffers of primitives at three resolutions: the last hour by second,
+ * the last day by minute and the last 30 days by hour. Coarser rings keep
+ * the average and the peak of the finer samples they summarise.
+ *
+ * If a file is given, the history is written to it once a minute as well
+ * as on {@link #stop()}, so a crash loses at most the last minute.
+ */
+public class OccupancyRecorder {
+    private static final int FILE_MAGIC = 0x4F434355; // "OCCU"
+    private static final int FILE_VERSION = 1;
+    private static final ParkingSpotType[] TYPES = ParkingSpotType.values();
+    private static final long SAVE_INTERVAL_MILLIS = 60 * 1000L;
+
+    public enum Resolution {
+        SECOND(1000L, 3600),
+        MINUTE(60 * 1000L, 24 * 60),
+        HOUR(60 * 60 * 1000L, 30 * 24);
+
+        private final long millis;
+        private final int slots;
+
+        Resolution(long millis, int slots) {
+            this.millis = millis;
+            this.slots = slots;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    private static final int RESOLUTION_COUNT = Resolution.values().length;
+
+    private ParkingLot parkingLot;
+    private Path file;
+    private List<Series> series; // floor index * TYPES.length + type ordinal
+    private ScheduledExecutorService sampler;
+
+    /**
+     * @param file where the history is written every minute and when the
+     *             recorder stops, or null
+     */
+    public OccupancyRecorder(ParkingLot parkingLot, Path file) {
+        this.parkingLot = parkingLot;
+        this.file = file;
+        this.series = new ArrayList<>();
+    }
+
+    public synchronized void start() {
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "occupancy-recorder");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleAtFixedRate(this::sample, 0, Resolution.SECOND.millis, TimeUnit.MILLISECONDS);
+            if (file != null) {
+                sampler.scheduleWithFixedDelay(this::checkpoint, SAVE_INTERVAL_MILLIS, SAVE_INTERVAL_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Stops sampling and writes the history to the file, if one was given.
+     */
+    public synchronized void stop() throws IOException {
+        if (sampler != null) {
+            sampler.shutdown();
+            sampler = null;
+        }
+        if (file != null) {
+            save(file);
+        }
+    }
+
+    /**
+     * Highest number of occupied spots of the type on the floor during the
+     * last windowMillis, at the finest resolution that covers the window.
+     */
+    public int getPeakOccupancy(ParkingFloor floor, ParkingSpotType type, long windowMillis) {
+        Series s = seriesOf(floor, type);
+        return s == null ? 0 : s.peak(resolutionFor(windowMillis), windowMillis);
+    }
+
+    public double getAverageOccupancy(ParkingFloor floor, ParkingSpotType type, long windowMillis) {
+        Series s = seriesOf(floor, type);
+        return s == null ? 0 : s.average(resolutionFor(windowMillis), windowMillis);
+    }
+
+    /**
+     * Takes one sample of every floor; called by the sampler thread once a
+     * second. An exception never escapes to the scheduler, which would stop
+     * sampling for good.
+     */
+    void sample() {
+        try {
+            int floorCount = parkingLot.getParkingFloorCount();
+            synchronized (this) {
+                while (series.size() < floorCount * TYPES.length) {
+                    series.add(new Series());
+                }
+            }
+            for (int f = 0; f < floorCount; f++) {
+                ParkingFloor floor = parkingLot.getParkingFloor(f);
+                for (ParkingSpotType type : TYPES) {
+                    int occupied = floor.getSpotCount(type) - floor.getFreeSpotCount(type);
+                    series.get(f * TYPES.length + type.ordinal()).record(occupied);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Occupancy recorder: " + e);
+        }
+    }
+
+    /**
+     * Periodic save on the sampler thread. A failed write is reported and
+     * retried on the next interval.
+     */
+    private void checkpoint() {
+        try {
+            save(file);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Occupancy recorder: could not save " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Writes every ring as primitives: a header, then for each series and
+     * resolution the number of samples taken followed by the peaks and the
+     * averages in slot order. The file is written next to the target and
+     * moved over it, so a crash mid-write leaves the previous history.
+     */
+    public synchronized void save(Path target) throws IOException {
+        Path partial = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(series.size() / TYPES.length);
+            out.writeInt(TYPES.length);
+            for (Series s : series) {
+                s.writeTo(out);
+            }
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized Series seriesOf(ParkingFloor floor, ParkingSpotType type) {
+        int index = floor.getIndex() * TYPES.length + type.ordinal();
+        return floor.getIndex() < 0 || index >= series.size() ? null : series.get(index);
+    }
+
+    private static Resolution resolutionFor(long windowMillis) {
+        for (Resolution resolution : Resolution.values()) {
+            if (windowMillis <= resolution.millis * resolution.slots) {
+                return resolution;
+            }
+        }
+        return Resolution.HOUR;
+    }
+
+    /**
+     * Rings of one floor and spot type. Each resolution has a peak and an
+     * average per slot; a coarse slot is filled once the finer ring has
+     * produced enough samples to cover it.
+     */
+    private static class Series {
+        private final int[][] peaks = new int[RESOLUTION_COUNT][];
+        private final float[][] averages = new float[RESOLUTION_COUNT][];
+        private final long[] counts = new long[RESOLUTION_COUNT];
+        // Running sum and peak of the finer samples for the slot being built.
+        private final double[] pendingSums = new double[RESOLUTION_COUNT];
+        private final int[] pendingPeaks = new int[RESOLUTION_COUNT];
+        private final int[] pendingCounts = new int[RESOLUTION_COUNT];
+
+        Series() {
+            for (Resolution resolution : Resolution.values()) {
+                peaks[resolution.ordinal()] = new int[resolution.slots];
+                averages[resolution.ordinal()] = new float[resolution.slots];
+            }
+        }
+
+        synchronized void record(int occupied) {
+            add(0, occupied, occupied);
+        }
+
+        private void add(int level, double average, int peak) {
+            int slot = (int) (counts[level] % peaks[level].length);
+            peaks[level][slot] = peak;
+            averages[level][slot] = (float) average;
+            counts[level]++;
+            int next = level + 1;
+            if (next == RESOLUTION_COUNT) {
+                return;
+            }
+            pendingSums[next] += average;
+            pendingPeaks[next] = Math.max(pendingPeaks[next], peak);
+            int perSlot = (int) (Resolution.values()[next].millis / Resolution.values()[level].millis);
+            if (++pendingCounts[next] == perSlot) {
+                double sum = pendingSums[next];
+                int max = pendingPeaks[next];
+                pendingSums[next] = 0;
+                pendingPeaks[next] = 0;
+                pendingCounts[next] = 0;
+                add(next, sum / perSlot, max);
+            }
+        }
+
+        synchronized int peak(Resolution resolution, long windowMillis) {
+            int level = resolution.ordinal();
+            int peak = 0;
+            for (int slot : lastSlots(level, windowMillis)) {
+                peak = Math.max(peak, peaks[level][slot]);
+            }
+            return peak;
+        }
+
+        synchronized double average(Resolution resolution, long windowMillis) {
+            int level = resolution.ordinal();
+            int[] slots = lastSlots(level, windowMillis);
+            double sum = 0;
+            for (int slot : slots) {
+                sum += averages[level][slot];
+            }
+            return slots.length == 0 ? 0 : sum / slots.length;
+        }
+
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            for (int level = 0; level < RESOLUTION_COUNT; level++) {
+                out.writeLong(counts[level]);
+                for (int peak : peaks[level]) {
+                    out.writeInt(peak);
+                }
+                for (float average : averages[level]) {
+                    out.writeFloat(average);
+                }
+            }
+        }
+
+        private int[] lastSlots(int level, long windowMillis) {
+            int length = peaks[level].length;
+            long wanted = Math.max(1, windowMillis / Resolution.values()[level].millis);
+            int n = (int) Math.min(Math.min(wanted, length), counts[level]);
+            int[] slots = new int[n];
+            for (int i = 0; i < n; i++) {
+                slots[i] = (int) ((counts[level] - 1 - i) % length);
+            }
+            return slots;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package parkinglot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmarks for the concurrent paths of the package. It is a plain main
+ * class, so it builds with the same {@code javac} line as everything else.
+ * Every suite warms up before measuring and reports the best of three
+ * rounds.
+ *
+ * <pre>
+ * java -cp out parkinglot.ParkingBenchmark [suite ...]
+ * </pre>
+ *
+ * Suites:
+ * <ul>
+ * <li>{@code tickets}: getNewParkingTicket + releaseTicket with 1 to 64 threads, lock-free
+ * and behind one global lock as before</li>
+ * <li>{@code floor}: ParkingFloor tryAcquire / assignVehicleToReservedSpot / freeSpot on one floor</li>
+ * <li>{@code settle}: settleTicket one by one vs settleTickets in batches of 100, one thread</li>
+ * <li>{@code isfull}: isFull(type) latency while other threads park and leave</li>
+ * <li>{@code mixed}: arrivals and departures on 1, 10 and 100 floors of 1,000 spots</li>
+ * <li>{@code nearest}: NearestSpotStrategy acquire and release percentiles</li>
+ * <li>{@code registry}: issue + settle throughput of 1 to 8 lots in a ParkingLotRegistry</li>
+ * <li>{@code metrics}: cost per event of the ParkingMetrics recorders</li>
+ * </ul>
+ * With no argument every suite runs.
+ */
+public class ParkingBenchmark {
+    private static final int[] THREADS = {1, 4, 16};
+    private static final int[] TICKET_THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int ROUNDS = 3;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        List<String> suites = Arrays.asList(args.length > 0 ? args
+                : new String[] {"tickets", "settle", "floor", "isfull", "mixed", "nearest", "registry", "metrics"});
+        System.out.printf("%d CPUs available%n", Runtime.getRuntime().availableProcessors());
+        for (String suite : suites) {
+            switch (suite) {
+                case "tickets":
+                    tickets();
+                    break;
+                case "settle":
+                    settle();
+                    break;
+                case "floor":
+                    floor();
+                    break;
+                case "isfull":
+                    isFull();
+                    break;
+                case "mixed":
+                    mixed();
+                    break;
+                case "nearest":
+                    nearest();
+                    break;
+                case "registry":
+                    registry();
+                    break;
+                case "metrics":
+                    metrics();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown suite " + suite);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Work run by each benchmark thread; returns the operations it did.
+     */
+    private interface Workload {
+        long run(int thread, long iterations);
+    }
+
+    // The locked baseline serialises issue and release on one monitor, as
+    // getNewParkingTicket did under the lot's static lock.
+    private static void tickets() throws InterruptedException {
+        for (int threads : TICKET_THREADS) {
+            long iterations = 640_000 / threads;
+            ParkingLot locked = newLot(10, 1000);
+            Object lock = new Object();
+            double lockedPerSecond = measure(threads, iterations, (thread, count) -> {
+                Vehicle car = new Car("L" + thread);
+                for (long i = 0; i < count; i++) {
+                    ParkingTicket ticket;
+                    synchronized (lock) {
+                        ticket = locked.getNewParkingTicket(car);
+                    }
+                    if (ticket != null) {
+                        synchronized (lock) {
+                            locked.releaseTicket(ticket);
+                        }
+                    }
+                }
+                return count;
+            });
+            ParkingLot lot = newLot(10, 1000);
+            double opsPerSecond = measure(threads, iterations, (thread, count) -> {
+                Vehicle car = new Car("T" + thread);
+                for (long i = 0; i < count; i++) {
+                    ParkingTicket ticket = lot.getNewParkingTicket(car);
+                    if (ticket != null) {
+                        lot.releaseTicket(ticket);
+                    }
+                }
+                return count;
+            });
+            System.out.printf("tickets   %2d threads: %6.2f M issue+release/s, %6.2f M behind one lock%n",
+                    threads, opsPerSecond / 1e6, lockedPerSecond / 1e6);
+        }
+    }
+
+    private static void settle() {
+        int count = 20_000;
+        ParkingLot lot = newLot(1, count);
+        Vehicle car = new Car("S");
+        ParkingTicket[] tickets = new ParkingTicket[count];
+        double single = 0;
+        double batched = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            issueAll(lot, car, tickets);
+            long start = System.nanoTime();
+            for (ParkingTicket ticket : tickets) {
+                lot.settleTicket(ticket);
+            }
+            long singleNanos = System.nanoTime() - start;
+
+            issueAll(lot, car, tickets);
+            start = System.nanoTime();
+            for (int i = 0; i < count; i += 100) {
+                lot.settleTickets(Arrays.asList(tickets).subList(i, i + 100));
+            }
+            long batchedNanos = System.nanoTime() - start;
+            if (round > 0) {
+                single = Math.max(single, count / (singleNanos / 1e9));
+                batched = Math.max(batched, count / (batchedNanos / 1e9));
+            }
+        }
+        System.out.printf("settle    %,d tickets: %6.2f M settleTicket/s, %6.2f M/s in batches of 100%n",
+                count, single / 1e6, batched / 1e6);
+    }
+
+    private static void issueAll(ParkingLot lot, Vehicle car, ParkingTicket[] tickets) {
+        for (int i = 0; i < tickets.length; i++) {
+            tickets[i] = lot.getNewParkingTicket(car);
+        }
+    }
+
+    private static void floor() throws InterruptedException {
+        for (int threads : THREADS) {
+            ParkingFloor floor = new ParkingFloor("F");
+            for (int i = 0; i < 1000; i++) {
+                floor.addParkingSpot(new CompactSpot("C" + i));
+            }
+            double opsPerSecond = measure(threads, 500_000, (thread, iterations) -> {
+                Vehicle car = new Car("F" + thread);
+                for (long i = 0; i < iterations; i++) {
+                    ParkingSpot spot = floor.tryAcquire(ParkingSpotType.COMPACT);
+                    if (spot != null && floor.assignVehicleToReservedSpot(car, spot)) {
+                        floor.freeSpot(spot);
+                    }
+                }
+                return iterations;
+            });
+            System.out.printf("floor     %2d threads: %6.2f M assign+free/s%n", threads, opsPerSecond / 1e6);
+        }
+    }
+
+    private static void isFull() throws InterruptedException {
+        for (int threads : new int[] {4, 16}) {
+            ParkingLot lot = newLot(10, 100);
+            long[] readNanos = new long[1];
+            measure(threads, 200_000, (thread, iterations) -> {
+                if (thread == 0) {
+                    long start = System.nanoTime();
+                    for (long i = 0; i < iterations * 10; i++) {
+                        if (lot.isFull(ParkingSpotType.COMPACT)) {
+                            sink++;
+                        }
+                    }
+                    readNanos[0] = (System.nanoTime() - start) / (iterations * 10);
+                    return iterations * 10;
+                }
+                return parkAndLeave(lot, thread, iterations, 120);
+            });
+            System.out.printf("isfull    %2d threads: %6d ns per isFull(type) under writers%n", threads, readNanos[0]);
+        }
+    }
+
+    private static void mixed() throws InterruptedException {
+        for (int floors : new int[] {1, 10, 100}) {
+            for (int threads : THREADS) {
+                ParkingLot lot = newLot(floors, 1000);
+                int parkedPerThread = floors * 1000 * 9 / 10 / threads;
+                double opsPerSecond = measure(threads, 200_000,
+                        (thread, iterations) -> parkAndLeave(lot, thread, iterations, parkedPerThread));
+                System.out.printf("mixed %3d floors %2d threads: %6.2f M arrivals+departures/s%n",
+                        floors, threads, opsPerSecond / 1e6);
+            }
+        }
+    }
+
+    private static void nearest() {
+        EntrancePanel east = new EntrancePanel("E1");
+        EntrancePanel west = new EntrancePanel("E2");
+        int spots = 10_000;
+        NearestSpotStrategy strategy = new NearestSpotStrategy(Arrays.asList(east, west), (entrance, spot) -> {
+            int position = spot.getIndex();
+            return entrance == east ? position : spots - position;
+        });
+        ParkingFloor floor = new ParkingFloor("F", strategy);
+        for (int i = 0; i < spots; i++) {
+            floor.addParkingSpot(new CompactSpot("C" + i));
+        }
+        Random random = new Random(1);
+        Vehicle car = new Car("N");
+        List<ParkingSpot> parked = new ArrayList<>();
+        for (int i = 0; i < spots / 2; i++) {
+            ParkingSpot spot = floor.tryAcquire(ParkingSpotType.COMPACT, random.nextBoolean() ? east : west);
+            floor.assignVehicleToReservedSpot(car, spot);
+            parked.add(spot);
+        }
+        int pairs = 1_000_000;
+        long[] acquire = new long[pairs];
+        long[] release = new long[pairs];
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < pairs; i++) {
+                long start = System.nanoTime();
+                ParkingSpot spot = floor.tryAcquire(ParkingSpotType.COMPACT, random.nextBoolean() ? east : west);
+                acquire[i] = System.nanoTime() - start;
+                floor.assignVehicleToReservedSpot(car, spot);
+                int leaving = random.nextInt(parked.size());
+                ParkingSpot left = parked.set(leaving, spot);
+                start = System.nanoTime();
+                floor.freeSpot(left);
+                release[i] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(acquire);
+        Arrays.sort(release);
+        System.out.printf("nearest 10k spots, 2 entrances, 50%% full: acquire p50 %d p99 %d p99.9 %d ns, "
+                        + "release p50 %d p99 %d p99.9 %d ns%n",
+                percentile(acquire, 0.5), percentile(acquire, 0.99), percentile(acquire, 0.999),
+                percentile(release, 0.5), percentile(release, 0.99), percentile(release, 0.999));
+    }
+
+    private static void registry() throws Exception {
+        for (int lots : new int[] {1, 2, 4, 8}) {
+            double best = 0;
+            for (int round = 0; round <= ROUNDS; round++) {
+                ParkingLotRegistry registry = new ParkingLotRegistry(lots);
+                for (int l = 0; l < lots; l++) {
+                    ParkingLot lot = registry.createLot("lot" + l, "Lot " + l, "");
+                    ParkingFloor floor = new ParkingFloor("F");
+                    for (int i = 0; i < 2000; i++) {
+                        floor.addParkingSpot(new CompactSpot("C" + i));
+                    }
+                    lot.addParkingFloor(floor);
+                }
+                int perLot = 200_000;
+                long start = System.nanoTime();
+                List<CompletableFuture<Void>> done = new ArrayList<>();
+                for (int l = 0; l < lots; l++) {
+                    done.add(registry.submit("lot" + l, lot -> {
+                        Vehicle car = new Car("R");
+                        for (int i = 0; i < perLot; i++) {
+                            lot.settleTicket(lot.getNewParkingTicket(car));
+                        }
+                        return null;
+                    }));
+                }
+                for (CompletableFuture<Void> future : done) {
+                    future.get();
+                }
+                double opsPerSecond = (double) lots * perLot / (System.nanoTime() - start) * 1e9;
+                registry.shutdown();
+                if (round > 0) {
+                    best = Math.max(best, opsPerSecond);
+                }
+            }
+            System.out.printf("registry  %d lots: %6.2f M issue+settle/s in total%n", lots, best / 1e6);
+        }
+    }
+
+    private static void metrics() {
+        ParkingMetrics metrics = new ParkingMetrics();
+        LogHistogram histogram = new LogHistogram();
+        int calls = 50_000_000;
+        double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                histogram.record(i & 1023);
+            }
+            long histogramNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                metrics.ticketIssued(i & 1023);
+            }
+            long issuedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                metrics.ticketRejected(ParkingSpotType.COMPACT);
+            }
+            long rejectedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                if (ParkingMetrics.sampleLockWait()) {
+                    sink++;
+                }
+            }
+            long sampleNanos = System.nanoTime() - start;
+            if (round > 0) {
+                best[0] = Math.min(best[0], (double) histogramNanos / calls);
+                best[1] = Math.min(best[1], (double) issuedNanos / calls);
+                best[2] = Math.min(best[2], (double) rejectedNanos / calls);
+                best[3] = Math.min(best[3], (double) sampleNanos / calls);
+            }
+        }
+        System.out.printf("metrics: histogram record %.1f ns, ticketIssued %.1f ns, ticketRejected %.1f ns, "
+                + "lock-wait sample check %.1f ns%n", best[0], best[1], best[2], best[3]);
+    }
+
+    // Each thread keeps up to target vehicles parked and otherwise lets the
+    // oldest one leave, settling its ticket.
+    private static long parkAndLeave(ParkingLot lot, int thread, long iterations, int target) {
+        Deque<ParkingTicket> parked = new ArrayDeque<>();
+        Vehicle car = new Car("M" + thread);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long i = 0; i < iterations; i++) {
+            if (parked.size() < target && (parked.isEmpty() || random.nextBoolean())) {
+                ParkingTicket ticket = lot.getNewParkingTicket(car);
+                if (ticket != null) {
+                    parked.add(ticket);
+                }
+            } else {
+                lot.settleTicket(parked.poll());
+            }
+        }
+        for (ParkingTicket ticket : parked) {
+            lot.releaseTicket(ticket);
+        }
+        return iterations;
+    }
+
+    // Runs the workload on all threads at once, one warm-up round and then
+    // ROUNDS measured ones, and returns the best total operations per second.
+    private static double measure(int threads, long iterations, Workload workload) throws InterruptedException {
+        double best = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long[] ops = new long[threads];
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    ops[thread] = workload.run(thread, iterations);
+                });
+                workers[t].start();
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - begin;
+            if (round > 0) {
+                best = Math.max(best, (double) Arrays.stream(ops).sum() / elapsed * 1e9);
+            }
+        }
+        return best;
+    }
+
+    private static ParkingLot newLot(int floors, int spotsPerFloor) {
+        ParkingLot lot = new ParkingLot("Benchmark", "", 0);
+        for (int f = 0; f < floors; f++) {
+            ParkingFloor floor = new ParkingFloor("F" + f);
+            for (int i = 0; i < spotsPerFloor; i++) {
+                floor.addParkingSpot(new CompactSpot("F" + f + "-C" + i));
+            }
+            lot.addParkingFloor(floor);
+        }
+        return lot;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+}
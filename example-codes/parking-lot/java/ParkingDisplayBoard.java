@@ -0,0 +1,39 @@
+package parkinglot;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Display board showing the free spot count of each type on one floor.
+ */
+public class ParkingDisplayBoard implements CapacitySubscriber {
+    private String id;
+    private ParkingFloor floor;
+    private AtomicIntegerArray freeSpotCounts;
+
+    public ParkingDisplayBoard(String id, ParkingFloor floor) {
+        this.id = id;
+        this.floor = floor;
+        this.freeSpotCounts = new AtomicIntegerArray(ParkingSpotType.values().length);
+    }
+
+    @Override
+    public void onFreeSpotCount(ParkingFloor floor, ParkingSpotType type, int freeCount) {
+        if (floor == this.floor) {
+            freeSpotCounts.set(type.ordinal(), freeCount);
+        }
+    }
+
+    public int getFreeSpotCount(ParkingSpotType type) {
+        return freeSpotCounts.get(type.ordinal());
+    }
+
+    public void showFreeSpotCounts() {
+        StringBuilder message = new StringBuilder(id).append(" - ").append(floor.getName());
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            int free = getFreeSpotCount(type);
+            message.append('\n').append(type).append(": ")
+                    .append(free > 0 ? free + " free" : "full");
+        }
+        System.out.println(message);
+    }
+}
@@ -1,10 +1,17 @@
 package parkinglot;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a floor in the parking lot.
+ * Free spots are handed out by a {@link SpotAssignmentStrategy}; the default
+ * one is a lock-free pool per spot type, so any number of entrance and exit
+ * panels can work on the same floor concurrently. Very large floors can
+ * keep their spots in a {@link SpotStore} instead of one object per spot.
  */
 public class ParkingFloor {
     private String name;
@@ -13,85 +20,215 @@ public class ParkingFloor {
     private Map<String, LargeSpot> largeSpots;
     private Map<String, MotorbikeSpot> motorbikeSpots;
     private Map<String, ElectricSpot> electricSpots;
-    private int freeHandicappedSpotCount;
-    private int freeCompactSpotCount;
-    private int freeLargeSpotCount;
-    private int freeMotorbikeSpotCount;
-    private int freeElectricSpotCount;
+    private SpotAssignmentStrategy assignmentStrategy;
+    private List<CapacityListener> capacityListeners;
+    private List<ParkingSpot> spots;
+    private SpotStore spotStore;
+    private int index = -1;
 
     public ParkingFloor(String name) {
+        this(name, new AnyFreeSpotStrategy());
+    }
+
+    public ParkingFloor(String name, SpotAssignmentStrategy assignmentStrategy) {
         this.name = name;
         this.handicappedSpots = new HashMap<>();
         this.compactSpots = new HashMap<>();
         this.largeSpots = new HashMap<>();
         this.motorbikeSpots = new HashMap<>();
         this.electricSpots = new HashMap<>();
+        this.assignmentStrategy = assignmentStrategy;
+        this.capacityListeners = new CopyOnWriteArrayList<>();
+        this.spots = new ArrayList<>();
+    }
+
+    /**
+     * Creates a floor whose spots are rows of the store rather than
+     * objects. The store also hands out the free spots.
+     */
+    public ParkingFloor(String name, SpotStore spotStore) {
+        this(name, (SpotAssignmentStrategy) spotStore);
+        this.spotStore = spotStore;
+        spotStore.setFloor(this);
     }
 
+    public void addCapacityListener(CapacityListener listener) {
+        capacityListeners.add(listener);
+    }
+
+    /**
+     * Spots are expected to be added while the floor is being set up,
+     * before any panel starts acquiring from it. A floor backed by a
+     * {@link SpotStore} keeps only the number and type of the spot.
+     */
     public void addParkingSpot(ParkingSpot spot) {
+        if (spotStore != null) {
+            addParkingSpot(spot.getNumber(), spot.getType());
+            return;
+        }
+        spot.attach(this, spots.size());
+        spots.add(spot);
         switch (spot.getType()) {
             case HANDICAPPED:
                 handicappedSpots.put(spot.getNumber(), (HandicappedSpot) spot);
-                freeHandicappedSpotCount++;
                 break;
             case COMPACT:
                 compactSpots.put(spot.getNumber(), (CompactSpot) spot);
-                freeCompactSpotCount++;
                 break;
             case LARGE:
                 largeSpots.put(spot.getNumber(), (LargeSpot) spot);
-                freeLargeSpotCount++;
                 break;
             case MOTORBIKE:
                 motorbikeSpots.put(spot.getNumber(), (MotorbikeSpot) spot);
-                freeMotorbikeSpotCount++;
                 break;
             case ELECTRIC:
                 electricSpots.put(spot.getNumber(), (ElectricSpot) spot);
-                freeElectricSpotCount++;
                 break;
         }
+        assignmentStrategy.addSpot(spot);
+        if (spot.isFree()) {
+            notifyCapacityChanged(spot.getType(), 1);
+        }
     }
 
-    public void assignVehicleToSpot(Vehicle vehicle, ParkingSpot spot) {
-        spot.assignVehicle(vehicle);
-        switch (spot.getType()) {
+    /**
+     * Adds a free spot with the given number and type, without creating a
+     * spot object when the floor is backed by a {@link SpotStore}.
+     */
+    public void addParkingSpot(String number, ParkingSpotType type) {
+        if (spotStore == null) {
+            addParkingSpot(newSpot(number, type));
+            return;
+        }
+        spotStore.addSpot(number, type);
+        notifyCapacityChanged(type, 1);
+    }
+
+    /**
+     * Reserves a free spot of the given type, or returns null if the floor
+     * has none left. The caller parks the vehicle with
+     * {@link #assignVehicleToReservedSpot(Vehicle, ParkingSpot)}.
+     */
+    public ParkingSpot tryAcquire(ParkingSpotType type) {
+        return tryAcquire(type, null);
+    }
+
+    /**
+     * Same as {@link #tryAcquire(ParkingSpotType)}, letting the strategy pick
+     * the best spot for a vehicle coming through the given entrance.
+     */
+    public ParkingSpot tryAcquire(ParkingSpotType type, EntrancePanel entrance) {
+        ParkingSpot spot = assignmentStrategy.tryAcquire(type, entrance);
+        if (spot != null) {
+            notifyCapacityChanged(type, -1);
+        }
+        return spot;
+    }
+
+    /**
+     * Empties the spot, or gives up a reservation on it, and hands it back
+     * to the free pool. Returns false if the spot was already free.
+     */
+    public boolean release(ParkingSpot spot) {
+        spot.vacate();
+        if (assignmentStrategy.release(spot)) {
+            notifyCapacityChanged(spot.getType(), 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parks the vehicle on a spot the caller reserved with
+     * {@link #tryAcquire}. Returns false if the spot is not reserved or
+     * already taken.
+     */
+    public boolean assignVehicleToReservedSpot(Vehicle vehicle, ParkingSpot spot) {
+        return spot.occupy(vehicle);
+    }
+
+    /**
+     * Takes the spot out of the free spots and parks the vehicle on it, or
+     * returns false if the spot is not free. A spot another caller has
+     * reserved is not free, so it is never taken from under them.
+     */
+    public boolean assignVehicleToSpot(Vehicle vehicle, ParkingSpot spot) {
+        if (!assignmentStrategy.claim(spot)) {
+            return false;
+        }
+        notifyCapacityChanged(spot.getType(), -1);
+        if (spot.occupy(vehicle)) {
+            return true;
+        }
+        release(spot);
+        return false;
+    }
+
+    public void freeSpot(ParkingSpot spot) {
+        release(spot);
+    }
+
+    public int getSpotCount(ParkingSpotType type) {
+        if (spotStore != null) {
+            return spotStore.getSpotCount(type);
+        }
+        switch (type) {
             case HANDICAPPED:
-                freeHandicappedSpotCount--;
-                break;
+                return handicappedSpots.size();
             case COMPACT:
-                freeCompactSpotCount--;
-                break;
+                return compactSpots.size();
             case LARGE:
-                freeLargeSpotCount--;
-                break;
+                return largeSpots.size();
             case MOTORBIKE:
-                freeMotorbikeSpotCount--;
-                break;
+                return motorbikeSpots.size();
             case ELECTRIC:
-                freeElectricSpotCount--;
-                break;
+                return electricSpots.size();
+            default:
+                return 0;
         }
     }
 
-    public void freeSpot(ParkingSpot spot) {
-        spot.removeVehicle();
-        switch (spot.getType()) {
+    public int getFreeSpotCount(ParkingSpotType type) {
+        return assignmentStrategy.getFreeSpotCount(type);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    ParkingSpot getSpot(int index) {
+        return spotStore != null ? spotStore.getSpot(index) : spots.get(index);
+    }
+
+    /**
+     * Position of the floor in its lot, assigned when the floor is added.
+     */
+    int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    private static ParkingSpot newSpot(String number, ParkingSpotType type) {
+        switch (type) {
             case HANDICAPPED:
-                freeHandicappedSpotCount++;
-                break;
+                return new HandicappedSpot(number);
             case COMPACT:
-                freeCompactSpotCount++;
-                break;
+                return new CompactSpot(number);
             case LARGE:
-                freeLargeSpotCount++;
-                break;
+                return new LargeSpot(number);
             case MOTORBIKE:
-                freeMotorbikeSpotCount++;
-                break;
-            case ELECTRIC:
-                freeElectricSpotCount++;
-                break;
+                return new MotorbikeSpot(number);
+            default:
+                return new ElectricSpot(number);
+        }
+    }
+
+    private void notifyCapacityChanged(ParkingSpotType type, int delta) {
+        for (CapacityListener listener : capacityListeners) {
+            listener.onCapacityChanged(this, type, delta);
         }
     }
 }
@@ -0,0 +1,272 @@
+package parkinglot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only write-ahead journal of parking lot events, so the cars in the
+ * garage survive a restart.
+ *
+ * Every event is a fixed-size record written into a memory-mapped file.
+ * A background thread forces the mapping to disk every group-commit
+ * interval, so a crash loses at most that window of events. A snapshot
+ * writes all active tickets to a separate file and empties the journal;
+ * {@link #recover(ParkingLot)} replays the snapshot and then the journal.
+ *
+ * Record layout (64 bytes): kind, vehicle type, plate length, unused byte,
+ * floor index, spot index, unused int, ticket id, time in millis, amount,
+ * and up to 24 ASCII bytes of licence plate.
+ */
+public class ParkingJournal implements Closeable {
+    static final int RECORD_SIZE = 64;
+
+    private static final byte TICKET_ISSUED = 1;
+    private static final byte TICKET_PAID = 2;
+    private static final byte SPOT_FREED = 3;
+    private static final int MAX_PLATE_LENGTH = 24;
+    private static final int INITIAL_MAPPED_SIZE = 1 << 20;
+
+    private Path journalPath;
+    private Path snapshotPath;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Opens (or creates) the journal and snapshot in the given directory and
+     * forces pending records to disk every groupCommitMillis.
+     */
+    public ParkingJournal(Path directory, long groupCommitMillis) throws IOException {
+        Files.createDirectories(directory);
+        this.journalPath = directory.resolve("parking.journal");
+        this.snapshotPath = directory.resolve("parking.snapshot");
+        this.channel = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(INITIAL_MAPPED_SIZE, channel.size()));
+        this.position = endOfRecords(buffer);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "parking-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the ticket, then runs publish to make it active. A snapshot
+     * cannot start in between, so it either sees the ticket or keeps the
+     * record.
+     */
+    synchronized void ticketIssued(ParkingTicket ticket, Vehicle vehicle, Runnable publish) {
+        append(TICKET_ISSUED, ticket, vehicle, ticket.getIssuedAt().getTime(), 0);
+        publish.run();
+    }
+
+    void ticketPaid(ParkingTicket ticket) {
+        append(TICKET_PAID, ticket, null, ticket.getPayedAt().getTime(), ticket.getPayedAmount());
+    }
+
+    void spotFreed(ParkingTicket ticket) {
+        append(SPOT_FREED, ticket, null, System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * Forces every record written so far to disk.
+     */
+    public void flush() {
+        MappedByteBuffer current;
+        synchronized (this) {
+            current = buffer;
+        }
+        current.force();
+    }
+
+    /**
+     * Writes all active tickets of the lot to the snapshot file and empties
+     * the journal. Appends wait while the snapshot is taken. A ticket closed
+     * before the snapshot started is skipped even if the iteration still
+     * returns it: its closing record is already in the journal being
+     * emptied.
+     */
+    public synchronized void snapshot(ParkingLot lot) throws IOException {
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            IOException[] failure = new IOException[1];
+            lot.forEachActiveTicket(ticket -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                Vehicle vehicle = ticket.getParkingSpot().getVehicle();
+                if (vehicle == null || lot.getActiveTicket(ticket.getTicketId()) != ticket) {
+                    return;
+                }
+                record.clear();
+                writeRecord(record, 0, TICKET_ISSUED, ticket, vehicle, ticket.getIssuedAt().getTime(), 0);
+                try {
+                    out.write(record);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            out.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (int i = 0; i < position; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+        position = 0;
+        buffer.force();
+    }
+
+    /**
+     * Rebuilds the active tickets and spot occupancy of a lot from the
+     * snapshot and the journal. The lot must have the same floors and spots,
+     * added in the same order, as when the events were written, and the
+     * journal must not be attached to it yet. Returns the number of tickets
+     * restored; a ticket whose spot cannot be taken is reported and dropped.
+     */
+    public synchronized int recover(ParkingLot lot) throws IOException {
+        Map<Long, ByteBuffer> openTickets = new HashMap<>();
+        if (Files.exists(snapshotPath)) {
+            ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+            replay(snapshot, snapshot.limit(), openTickets);
+        }
+        replay(buffer, position, openTickets);
+
+        int restored = 0;
+        for (ByteBuffer record : openTickets.values()) {
+            ParkingFloor floor = lot.getParkingFloor(record.getInt(4));
+            ParkingSpot spot = floor.getSpot(record.getInt(8));
+            Vehicle vehicle = newVehicle(VehicleType.values()[record.get(1)], readPlate(record));
+
+            ParkingTicket ticket = new ParkingTicket();
+            ticket.setTicketId(record.getLong(16));
+            ticket.setIssuedAt(record.getLong(24));
+            ticket.setSpotType(spot.getType());
+            ticket.setParkingFloor(floor);
+            ticket.setParkingSpot(spot);
+            if (!floor.assignVehicleToSpot(vehicle, spot)) {
+                System.err.println("Parking journal: ticket " + ticket.getTicketId() + " dropped, spot "
+                        + spot.getNumber() + " on floor " + floor.getName() + " is already taken");
+                continue;
+            }
+            vehicle.assignTicket(ticket);
+            lot.restoreTicket(ticket);
+            restored++;
+        }
+        return restored;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.shutdown();
+        buffer.force();
+        channel.close();
+    }
+
+    private synchronized void append(byte kind, ParkingTicket ticket, Vehicle vehicle, long time, double amount) {
+        try {
+            if (position + RECORD_SIZE > buffer.capacity()) {
+                buffer.force();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) buffer.capacity() * 2);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow parking journal", e);
+        }
+        writeRecord(buffer, position, kind, ticket, vehicle, time, amount);
+        position += RECORD_SIZE;
+    }
+
+    private static void writeRecord(ByteBuffer target, int offset, byte kind, ParkingTicket ticket,
+                                    Vehicle vehicle, long time, double amount) {
+        target.put(offset + 1, vehicle == null ? 0 : (byte) vehicle.getType().ordinal());
+        target.putInt(offset + 4, ticket.getParkingFloor().getIndex());
+        target.putInt(offset + 8, ticket.getParkingSpot().getIndex());
+        target.putLong(offset + 16, ticket.getTicketId());
+        target.putLong(offset + 24, time);
+        target.putDouble(offset + 32, amount);
+        int plateLength = 0;
+        if (vehicle != null && vehicle.getLicenseNumber() != null) {
+            byte[] plate = vehicle.getLicenseNumber().getBytes(StandardCharsets.US_ASCII);
+            plateLength = Math.min(plate.length, MAX_PLATE_LENGTH);
+            for (int i = 0; i < plateLength; i++) {
+                target.put(offset + 40 + i, plate[i]);
+            }
+        }
+        target.put(offset + 2, (byte) plateLength);
+        // The kind goes last: a record with kind 0 is treated as the end.
+        target.put(offset, kind);
+    }
+
+    private static void replay(ByteBuffer records, int limit, Map<Long, ByteBuffer> openTickets) {
+        for (int offset = 0; offset + RECORD_SIZE <= limit; offset += RECORD_SIZE) {
+            byte kind = records.get(offset);
+            if (kind == 0) {
+                return;
+            }
+            long ticketId = records.getLong(offset + 16);
+            if (kind == TICKET_ISSUED) {
+                ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                for (int i = 0; i < RECORD_SIZE; i++) {
+                    record.put(i, records.get(offset + i));
+                }
+                openTickets.put(ticketId, record);
+            } else {
+                openTickets.remove(ticketId);
+            }
+        }
+    }
+
+    private static int endOfRecords(ByteBuffer records) {
+        int offset = 0;
+        while (offset + RECORD_SIZE <= records.capacity() && records.get(offset) != 0) {
+            offset += RECORD_SIZE;
+        }
+        return offset;
+    }
+
+    private static String readPlate(ByteBuffer record) {
+        byte[] plate = new byte[record.get(2)];
+        for (int i = 0; i < plate.length; i++) {
+            plate[i] = record.get(40 + i);
+        }
+        return new String(plate, StandardCharsets.US_ASCII);
+    }
+
+    private static Vehicle newVehicle(VehicleType type, String licenseNumber) {
+        switch (type) {
+            case TRUCK:
+                return new Truck(licenseNumber);
+            case ELECTRIC:
+                return new Electric(licenseNumber);
+            case VAN:
+                return new Van(licenseNumber);
+            case MOTORBIKE:
+                return new Motorbike(licenseNumber);
+            case CAR:
+            default:
+                return new Car(licenseNumber);
+        }
+    }
+}
@@ -1,55 +1,83 @@
 package parkinglot;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
- * Singleton class representing the parking lot system.
- * Thread-safe implementation using double-checked locking.
+ * Class representing the parking lot system.
+ * A process-wide singleton is available through thread-safe double-checked
+ * locking; services running several facilities create lots directly and
+ * host them in a {@link ParkingLotRegistry}.
+ * The lock only guards creation of the singleton; tickets are issued by
+ * acquiring a spot from the floor with the most free spots of the type.
  */
 public class ParkingLot {
-    private static ParkingLot instance = null;
+    private static volatile ParkingLot instance = null;
     private static final Lock lock = new ReentrantLock();
+    // Reservations can be made up to 90 days ahead.
+    private static final int RESERVATION_HORIZON_SLOTS = 90 * 24 * 4;
 
     private String name;
     private String address;
     private ParkingRate parkingRate;
 
-    private int compactSpotCount;
-    private int largeSpotCount;
-    private int motorbikeSpotCount;
-    private int electricSpotCount;
-    private int maxCompactCount;
-    private int maxLargeCount;
-    private int maxMotorbikeCount;
-    private int maxElectricCount;
+    private CapacityTree capacityTree;
 
     private Map<String, EntrancePanel> entrancePanels;
     private Map<String, ExitPanel> exitPanels;
     private Map<String, ParkingFloor> parkingFloors;
-    private Map<String, ParkingTicket> activeTickets;
+    private TicketIndex activeTickets;
+    private TicketIdGenerator ticketIdGenerator;
+    private volatile ParkingJournal journal;
+    private PlateIndex plateIndex;
+    private ReservationCalendar reservations;
+    private volatile SpotFitPolicy spotFitPolicy;
+    private SpotFitStats spotFitStats;
+    private ParkingMetrics metrics;
 
-    private ParkingLot(String name, String address) {
+    /**
+     * Creates an independent lot, e.g. one of many hosted by a
+     * {@link ParkingLotRegistry}. Single-facility deployments can keep using
+     * {@link #getInstance(String, String)}.
+     */
+    public ParkingLot(String name, String address, int nodeId) {
         this.name = name;
         this.address = address;
         this.parkingRate = new ParkingRate();
         this.entrancePanels = new HashMap<>();
         this.exitPanels = new HashMap<>();
         this.parkingFloors = new HashMap<>();
-        this.activeTickets = new HashMap<>();
+        this.activeTickets = new TicketIndex();
+        this.ticketIdGenerator = new TicketIdGenerator(nodeId);
+        this.metrics = new ParkingMetrics();
+        this.capacityTree = new CapacityTree(metrics);
+        this.plateIndex = new PlateIndex();
+        this.reservations = new ReservationCalendar(System.currentTimeMillis(), RESERVATION_HORIZON_SLOTS);
+        this.spotFitPolicy = new SpotFitPolicy();
+        this.spotFitStats = new SpotFitStats();
     }
 
     /**
      * Thread-safe singleton instance getter.
      */
     public static ParkingLot getInstance(String name, String address) {
+        return getInstance(name, address, 0);
+    }
+
+    /**
+     * Singleton getter for deployments running several ticketing nodes; the
+     * node id keeps ticket ids unique across them.
+     */
+    public static ParkingLot getInstance(String name, String address, int nodeId) {
         if (instance == null) {
             lock.lock();
             try {
                 if (instance == null) {
-                    instance = new ParkingLot(name, address);
+                    instance = new ParkingLot(name, address, nodeId);
                 }
             } finally {
                 lock.unlock();
@@ -58,73 +86,354 @@ public class ParkingLot {
         return instance;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Adds a floor and makes its free spots available for ticket issuance.
+     * Floors are expected to be added before the panels start issuing tickets.
+     */
+    public void addParkingFloor(ParkingFloor floor) {
+        parkingFloors.put(floor.getName(), floor);
+        capacityTree.addFloor(floor);
+    }
+
     public boolean isFull(ParkingSpotType type) {
-        if (type == ParkingSpotType.COMPACT) {
-            return compactSpotCount >= maxCompactCount;
-        } else if (type == ParkingSpotType.LARGE) {
-            return largeSpotCount >= maxLargeCount;
-        } else if (type == ParkingSpotType.MOTORBIKE) {
-            return motorbikeSpotCount >= maxMotorbikeCount;
-        } else if (type == ParkingSpotType.ELECTRIC) {
-            return electricSpotCount >= maxElectricCount;
-        }
-        return true;
+        return capacityTree.isFull(type);
+    }
+
+    public int getFreeSpotCount(ParkingSpotType type) {
+        return capacityTree.getFreeSpotCount(type);
     }
 
     public ParkingTicket getNewParkingTicket(Vehicle vehicle) {
-        if (this.isFull(getParkingSpotTypeForVehicle(vehicle.getType()))) {
-            System.out.println("Parking full!");
+        return getNewParkingTicket(vehicle, null);
+    }
+
+    /**
+     * Parks a walk-in vehicle on the floor with the most free spots of the
+     * first type in the spot fit policy that has room, and issues a ticket
+     * for that spot. Spots held for reservations due now are not given to
+     * walk-ins. Returns null when no fitting type has a spot left.
+     */
+    public ParkingTicket getNewParkingTicket(Vehicle vehicle, EntrancePanel entrance) {
+        long start = System.nanoTime();
+        ParkingSpotType[] fits = spotFitPolicy.getFits(vehicle.getType());
+        long now = 0;
+        for (int i = 0; i < fits.length; i++) {
+            ParkingSpotType type = fits[i];
+            // The lot-wide free count rules out full types without
+            // touching any floor.
+            int free = capacityTree.getFreeSpotCount(type);
+            if (free == 0) {
+                continue;
+            }
+            if (now == 0) {
+                now = System.currentTimeMillis();
+            }
+            int held = reservations.getBookedCount(type, now);
+            if (held > 0 && free <= held) {
+                continue;
+            }
+            ParkingTicket ticket = parkVehicle(vehicle, type, entrance);
+            if (ticket != null) {
+                spotFitStats.recordFit(type, i == 0);
+                metrics.ticketIssued(System.nanoTime() - start);
+                return ticket;
+            }
+        }
+        spotFitStats.recordRejection(vehicle.getType());
+        metrics.ticketRejected(fits[0]);
+        return null;
+    }
+
+    /**
+     * True if some spot type the vehicle type fits in has a free spot.
+     */
+    public boolean hasFreeSpotFor(VehicleType type) {
+        for (ParkingSpotType spotType : spotFitPolicy.getFits(type)) {
+            if (!capacityTree.isFull(spotType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public SpotFitPolicy getSpotFitPolicy() {
+        return spotFitPolicy;
+    }
+
+    public void setSpotFitPolicy(SpotFitPolicy spotFitPolicy) {
+        this.spotFitPolicy = spotFitPolicy;
+    }
+
+    public SpotFitStats getSpotFitStats() {
+        return spotFitStats;
+    }
+
+    public ParkingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Admits a vehicle holding a reservation that is valid now. Once the
+     * vehicle is parked, the spot it held is released from the calendar for
+     * the rest of the booking, as the parked vehicle now occupies it. If no
+     * spot of the type is free the reservation stays valid, so the holder
+     * can try again.
+     */
+    public ParkingTicket getNewParkingTicket(Vehicle vehicle, Reservation reservation, EntrancePanel entrance) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        if (now < reservation.getStartMillis() || now >= reservation.getEndMillis()
+                || !reservation.markUsed()) {
+            return null;
+        }
+        ParkingTicket ticket = parkVehicle(vehicle, reservation.getSpotType(), entrance);
+        if (ticket == null) {
+            reservation.markUnused();
+            metrics.ticketRejected(reservation.getSpotType());
+            return null;
+        }
+        reservations.release(reservation.getSpotType(), now, reservation.getEndMillis(), now);
+        metrics.ticketIssued(System.nanoTime() - start);
+        return ticket;
+    }
+
+    /**
+     * Books one spot of the type for [startMillis, endMillis), or returns
+     * null if some 15-minute slot of that window is already fully booked,
+     * or the window starts in the past or ends beyond the 90 days the
+     * calendar looks ahead.
+     */
+    public Reservation reserve(ParkingSpotType type, long startMillis, long endMillis) {
+        int capacity = 0;
+        for (ParkingFloor floor : parkingFloors.values()) {
+            capacity += floor.getSpotCount(type);
+        }
+        if (!reservations.tryBook(type, startMillis, endMillis, capacity, System.currentTimeMillis())) {
             return null;
         }
+        return new Reservation(ticketIdGenerator.nextId(), type, startMillis, endMillis);
+    }
+
+    public void cancelReservation(Reservation reservation) {
+        if (reservation.markUsed()) {
+            reservations.release(reservation.getSpotType(), reservation.getStartMillis(),
+                    reservation.getEndMillis(), System.currentTimeMillis());
+        }
+    }
 
-        lock.lock();
-        try {
-            ParkingTicket ticket = new ParkingTicket();
-            vehicle.assignTicket(ticket);
-            ticket.setTicketNumber(generateTicketNumber());
-            activeTickets.put(ticket.getTicketNumber(), ticket);
-            return ticket;
-        } finally {
-            lock.unlock();
+    /**
+     * Closes an active ticket and frees its spot.
+     */
+    public boolean releaseTicket(ParkingTicket ticket) {
+        if (activeTickets.remove(ticket.getTicketId(), ticket)) {
+            if (journal != null) {
+                journal.spotFreed(ticket);
+            }
+            unindexPlate(ticket);
+            ticket.getParkingFloor().freeSpot(ticket.getParkingSpot());
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Charges the ticket for the time parked so far, marks it paid and frees
+     * its spot. Returns the fee, or -1 if the ticket was not active.
+     */
+    public double settleTicket(ParkingTicket ticket) {
+        return settle(ticket, System.currentTimeMillis());
+    }
+
+    /**
+     * Settles a batch of exiting tickets against a single clock reading, as
+     * exit panels do when an event lets out. Returns the total collected;
+     * the fee of each ticket is recorded on the ticket.
+     */
+    public double settleTickets(List<ParkingTicket> tickets) {
+        return settleTickets(tickets, null);
+    }
+
+    /**
+     * Same as {@link #settleTickets(List)}, also storing the result of each
+     * ticket in fees: its fee, or -1 if it was not active.
+     */
+    double settleTickets(List<ParkingTicket> tickets, double[] fees) {
+        long now = System.currentTimeMillis();
+        double total = 0;
+        for (int i = 0; i < tickets.size(); i++) {
+            double fee = settle(tickets.get(i), now);
+            if (fees != null) {
+                fees[i] = fee;
+            }
+            if (fee > 0) {
+                total += fee;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Starts recording every issued, paid and released ticket. Recover the
+     * lot from the journal before attaching it.
+     */
+    public void setJournal(ParkingJournal journal) {
+        this.journal = journal;
+    }
+
+    ParkingFloor getParkingFloor(int index) {
+        return capacityTree.getFloor(index);
+    }
+
+    int getParkingFloorCount() {
+        return capacityTree.getFloorCount();
+    }
+
+    void restoreTicket(ParkingTicket ticket) {
+        activeTickets.put(ticket.getTicketId(), ticket);
+        plateIndex.add(ticket.getParkingSpot().getVehicle().getLicenseNumber(), ticket);
+    }
+
+    /**
+     * Returns the active ticket of the vehicle with the given plate, which
+     * also tells the floor and spot it is parked on, or null.
+     */
+    public ParkingTicket findTicketByPlate(String licenseNumber) {
+        return plateIndex.find(licenseNumber);
+    }
+
+    public List<ParkingTicket> findTicketsByPlatePrefix(String prefix) {
+        return plateIndex.findByPrefix(prefix);
+    }
+
+    /**
+     * Looks up a possibly misread plate: returns every parked vehicle whose
+     * plate is at most one character off, the exact match first.
+     */
+    public List<ParkingTicket> findTicketsByPlateRead(String licenseNumber) {
+        return plateIndex.findFuzzy(licenseNumber);
+    }
+
+    public ParkingRate getParkingRate() {
+        return parkingRate;
+    }
+
+    public void setParkingRate(ParkingRate parkingRate) {
+        this.parkingRate = parkingRate;
+    }
+
+    public ParkingTicket getActiveTicket(long ticketId) {
+        return activeTickets.get(ticketId);
+    }
+
+    /**
+     * Visits every active ticket, e.g. to reconcile them against the spots.
+     */
+    public void forEachActiveTicket(Consumer<ParkingTicket> action) {
+        activeTickets.forEach(action);
+    }
+
+    public int getActiveTicketCount() {
+        return activeTickets.size();
     }
 
     public boolean isFull() {
-        return compactSpotCount >= maxCompactCount &&
-               largeSpotCount >= maxLargeCount &&
-               motorbikeSpotCount >= maxMotorbikeCount &&
-               electricSpotCount >= maxElectricCount;
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            if (!capacityTree.isFull(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double settle(ParkingTicket ticket, long now) {
+        // Removing the ticket first makes sure it is only charged once.
+        if (!activeTickets.remove(ticket.getTicketId(), ticket)) {
+            return -1;
+        }
+        long parkedMillis = now - ticket.getIssuedAt().getTime();
+        double fee = parkingRate.calculateFee(ticket.getSpotType(), parkedMillis);
+        ticket.markPaid(fee, now);
+        // The payment is journaled before the spot is handed back.
+        if (journal != null) {
+            journal.ticketPaid(ticket);
+        }
+        metrics.ticketSettled(parkedMillis);
+        unindexPlate(ticket);
+        ticket.getParkingFloor().freeSpot(ticket.getParkingSpot());
+        return fee;
     }
 
-    private ParkingSpotType getParkingSpotTypeForVehicle(VehicleType type) {
-        switch (type) {
-            case CAR:
-                return ParkingSpotType.COMPACT;
-            case TRUCK:
-            case VAN:
-                return ParkingSpotType.LARGE;
-            case MOTORBIKE:
-                return ParkingSpotType.MOTORBIKE;
-            case ELECTRIC:
-                return ParkingSpotType.ELECTRIC;
-            default:
-                return ParkingSpotType.COMPACT;
+    private void unindexPlate(ParkingTicket ticket) {
+        Vehicle vehicle = ticket.getParkingSpot().getVehicle();
+        if (vehicle != null) {
+            plateIndex.remove(vehicle.getLicenseNumber(), ticket);
         }
     }
 
-    private String generateTicketNumber() {
-        return "TICKET-" + System.currentTimeMillis();
+    private ParkingTicket parkVehicle(Vehicle vehicle, ParkingSpotType type, EntrancePanel entrance) {
+        // A failed acquire means another panel took the last spot on that
+        // floor and the tree has already moved on to the next best one.
+        // Bounding the attempts by the floor count keeps a panel from
+        // spinning on a floor the tree has not caught up with yet.
+        for (int attempts = capacityTree.getFloorCount(); attempts > 0; attempts--) {
+            ParkingFloor floor = capacityTree.getFloorWithMostFreeSpots(type);
+            if (floor == null) {
+                return null;
+            }
+            ParkingSpot spot = floor.tryAcquire(type, entrance);
+            if (spot != null && floor.assignVehicleToReservedSpot(vehicle, spot)) {
+                return issueTicket(vehicle, floor, spot);
+            }
+        }
+        return null;
     }
-}
 
-class ParkingRate {
-    // Parking rate calculation logic
+    private ParkingTicket issueTicket(Vehicle vehicle, ParkingFloor floor, ParkingSpot spot) {
+        ParkingTicket ticket = new ParkingTicket();
+        ticket.setSpotType(spot.getType());
+        ticket.setParkingFloor(floor);
+        ticket.setParkingSpot(spot);
+        vehicle.assignTicket(ticket);
+        ticket.setTicketId(ticketIdGenerator.nextId());
+        // The ticket is journaled before it becomes active.
+        if (journal != null) {
+            journal.ticketIssued(ticket, vehicle, () -> activeTickets.put(ticket.getTicketId(), ticket));
+        } else {
+            activeTickets.put(ticket.getTicketId(), ticket);
+        }
+        plateIndex.add(vehicle.getLicenseNumber(), ticket);
+        return ticket;
+    }
 }
 
 class EntrancePanel {
-    // Entrance panel logic
+    private String id;
+
+    public EntrancePanel(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
 }
 
 class ExitPanel {
-    // Exit panel logic
+    private String id;
+
+    public ExitPanel(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
 }
@@ -0,0 +1,97 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Hosts many independent parking lots in one service.
+ * Lots are spread over a fixed set of worker threads and every request for
+ * a lot runs on the thread that owns it, so requests for the same lot never
+ * contend with each other and different lots scale with the worker count.
+ * Each lot gets its own node id, which keeps ticket ids unique across lots.
+ */
+public class ParkingLotRegistry {
+    private static final int MAX_LOTS = 1024; // node ids available to TicketIdGenerator
+
+    private Map<String, HostedLot> lots;
+    private List<ExecutorService> workers;
+    private int nextNodeId;
+
+    public ParkingLotRegistry(int workerCount) {
+        this.lots = new ConcurrentHashMap<>();
+        this.workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            String threadName = "parking-lot-worker-" + i;
+            workers.add(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    /**
+     * Creates a lot and assigns it to a worker. The lot's floors should be
+     * set up through {@link #submit} or before requests start flowing.
+     */
+    public synchronized ParkingLot createLot(String lotId, String name, String address) {
+        if (lots.containsKey(lotId)) {
+            throw new IllegalArgumentException("Lot " + lotId + " already exists");
+        }
+        if (nextNodeId == MAX_LOTS) {
+            throw new IllegalStateException("Registry is full");
+        }
+        int nodeId = nextNodeId++;
+        ParkingLot lot = new ParkingLot(name, address, nodeId);
+        lots.put(lotId, new HostedLot(lot, workers.get(nodeId % workers.size())));
+        return lot;
+    }
+
+    public ParkingLot getLot(String lotId) {
+        HostedLot hosted = lots.get(lotId);
+        return hosted == null ? null : hosted.lot;
+    }
+
+    /**
+     * Runs the request on the thread owning the lot.
+     */
+    public <T> CompletableFuture<T> submit(String lotId, Function<ParkingLot, T> request) {
+        HostedLot hosted = lots.get(lotId);
+        if (hosted == null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Unknown lot " + lotId));
+            return failed;
+        }
+        return CompletableFuture.supplyAsync(() -> request.apply(hosted.lot), hosted.worker);
+    }
+
+    public CompletableFuture<ParkingTicket> getNewParkingTicket(String lotId, Vehicle vehicle, EntrancePanel entrance) {
+        return submit(lotId, lot -> lot.getNewParkingTicket(vehicle, entrance));
+    }
+
+    public CompletableFuture<Double> settleTicket(String lotId, ParkingTicket ticket) {
+        return submit(lotId, lot -> lot.settleTicket(ticket));
+    }
+
+    public void shutdown() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    private static class HostedLot {
+        private final ParkingLot lot;
+        private final ExecutorService worker;
+
+        HostedLot(ParkingLot lot, ExecutorService worker) {
+            this.lot = lot;
+            this.worker = worker;
+        }
+    }
+}
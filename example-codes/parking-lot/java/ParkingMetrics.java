@@ -0,0 +1,102 @@
+package parkinglot;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot-path metrics of a lot: striped counters and log-bucket histograms
+ * that record without allocating or taking a lock. Readers sum the stripes,
+ * so a snapshot taken while gates are busy is close to, not exactly, a
+ * single point in time.
+ */
+public class ParkingMetrics {
+    // Lock waits are timed for one in 64 acquisitions to keep the two
+    // clock reads off most updates.
+    private static final int LOCK_WAIT_SAMPLE_MASK = 63;
+
+    private final LongAdder[] rejections = new LongAdder[ParkingSpotType.values().length];
+    private final LogHistogram timeToAssignNanos = new LogHistogram();
+    private final LogHistogram stayMillis = new LogHistogram();
+    private final LogHistogram lockWaitNanos = new LogHistogram();
+
+    public ParkingMetrics() {
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    void ticketIssued(long assignNanos) {
+        timeToAssignNanos.record(assignNanos);
+    }
+
+    void ticketRejected(ParkingSpotType type) {
+        rejections[type.ordinal()].increment();
+    }
+
+    void ticketSettled(long parkedMillis) {
+        stayMillis.record(parkedMillis);
+    }
+
+    static boolean sampleLockWait() {
+        return (ThreadLocalRandom.current().nextInt() & LOCK_WAIT_SAMPLE_MASK) == 0;
+    }
+
+    void lockWaited(long waitNanos) {
+        lockWaitNanos.record(waitNanos);
+    }
+
+    // Every issued and settled ticket is recorded in a histogram, so the
+    // histogram counts double as the ticket counters.
+    public long getTicketsIssued() {
+        return timeToAssignNanos.getCount();
+    }
+
+    public long getTicketsSettled() {
+        return stayMillis.getCount();
+    }
+
+    /**
+     * Arrivals turned away for lack of a spot: walk-ins counted by the spot
+     * type that fits them best, reservation holders by the reserved type.
+     */
+    public long getRejections(ParkingSpotType type) {
+        return rejections[type.ordinal()].sum();
+    }
+
+    /**
+     * Time from a walk-in or reservation holder reaching the lot to its
+     * ticket being issued.
+     */
+    public LogHistogram getTimeToAssignNanos() {
+        return timeToAssignNanos;
+    }
+
+    public LogHistogram getStayMillis() {
+        return stayMillis;
+    }
+
+    /**
+     * Sampled time spent waiting for the per-type floor capacity lock.
+     */
+    public LogHistogram getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    /**
+     * One "name value" line per counter and one line of percentiles per
+     * histogram, e.g. for a status page or a log line.
+     */
+    public String snapshot() {
+        StringBuilder out = new StringBuilder();
+        out.append("tickets_issued ").append(getTicketsIssued()).append('\n');
+        out.append("tickets_settled ").append(getTicketsSettled()).append('\n');
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            out.append("rejections{type=").append(type).append("} ")
+                    .append(getRejections(type)).append('\n');
+        }
+        timeToAssignNanos.appendTo(out, "time_to_assign_ns");
+        stayMillis.appendTo(out, "stay_ms");
+        lockWaitNanos.appendTo(out, "lock_wait_ns");
+        return out.toString();
+    }
+}
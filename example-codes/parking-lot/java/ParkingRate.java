@@ -0,0 +1,67 @@
+package parkinglot;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the hourly parking rates per spot type.
+ * Every started hour is charged at the rate of its tier; the last tier
+ * applies to all remaining hours. Cumulative fees are precomputed for the
+ * first week, so calculating a fee is a table lookup with no allocation.
+ */
+public class ParkingRate {
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+    private static final int PRECOMPUTED_HOURS = 7 * 24;
+    // $4 for the first hour, $3.5 for the second and third, $2.5 afterwards.
+    private static final double[] DEFAULT_HOURLY_RATES = {4.0, 3.5, 3.5, 2.5};
+
+    private double[][] cumulativeFees; // [spot type][hours] -> fee
+    private double[] remainingHourRates;
+
+    public ParkingRate() {
+        this(defaultRates());
+    }
+
+    /**
+     * @param hourlyRates per spot type, the rate of the first, second, ...
+     *                    hour; the last entry is used for every later hour
+     */
+    public ParkingRate(Map<ParkingSpotType, double[]> hourlyRates) {
+        int typeCount = ParkingSpotType.values().length;
+        this.cumulativeFees = new double[typeCount][PRECOMPUTED_HOURS + 1];
+        this.remainingHourRates = new double[typeCount];
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            double[] rates = hourlyRates.get(type);
+            if (rates == null || rates.length == 0) {
+                throw new IllegalArgumentException("No hourly rates for " + type);
+            }
+            double[] fees = cumulativeFees[type.ordinal()];
+            for (int hour = 1; hour <= PRECOMPUTED_HOURS; hour++) {
+                fees[hour] = fees[hour - 1] + rates[Math.min(hour, rates.length) - 1];
+            }
+            remainingHourRates[type.ordinal()] = rates[rates.length - 1];
+        }
+    }
+
+    /**
+     * Fee for parking a spot of the given type for the given time; every
+     * started hour counts, with a minimum of one hour.
+     */
+    public double calculateFee(ParkingSpotType type, long parkedMillis) {
+        long hours = Math.max(1, (parkedMillis + MILLIS_PER_HOUR - 1) / MILLIS_PER_HOUR);
+        double[] fees = cumulativeFees[type.ordinal()];
+        if (hours <= PRECOMPUTED_HOURS) {
+            return fees[(int) hours];
+        }
+        return fees[PRECOMPUTED_HOURS]
+                + (hours - PRECOMPUTED_HOURS) * remainingHourRates[type.ordinal()];
+    }
+
+    private static Map<ParkingSpotType, double[]> defaultRates() {
+        Map<ParkingSpotType, double[]> rates = new EnumMap<>(ParkingSpotType.class);
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            rates.put(type, DEFAULT_HOURLY_RATES);
+        }
+        return rates;
+    }
+}
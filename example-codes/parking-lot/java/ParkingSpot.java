@@ -1,70 +1,271 @@
 package parkinglot;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * Abstract base class for parking spots.
+ * A spot moves FREE -> RESERVED -> OCCUPIED and back; every transition is a
+ * CAS so two entrance panels can never end up holding the same spot.
+ * The base class holds no state: ordinary spots keep it in their own fields
+ * ({@link ObjectParkingSpot}), spots of a {@link SpotStore} in the store's
+ * arrays.
  */
 public abstract class ParkingSpot {
+    public abstract boolean isFree();
+
+    /**
+     * Takes a free spot out of the free pool. Only one caller can win.
+     */
+    abstract boolean reserve();
+
+    /**
+     * Returns an empty reserved spot to the free pool.
+     */
+    abstract boolean release();
+
+    /**
+     * Parks the vehicle on a spot the caller has reserved.
+     */
+    abstract boolean occupy(Vehicle vehicle);
+
+    /**
+     * Moves the vehicle out, leaving the spot reserved for {@link #release()}.
+     */
+    abstract boolean vacate();
+
+    /**
+     * Floor the spot was added to, or null for a spot on its own.
+     */
+    abstract ParkingFloor getFloor();
+
+    /**
+     * Records the floor and the position on it when the spot is added.
+     */
+    abstract void attach(ParkingFloor floor, int index);
+
+    /**
+     * Position of the spot on its floor, assigned when the spot is added.
+     */
+    abstract int getIndex();
+
+    /**
+     * Marks the spot as queued in a {@link FreeSpotPool}. Returns false if it
+     * already is, so a spot is never queued twice.
+     */
+    abstract boolean markPooled();
+
+    /**
+     * Clears the mark once the spot has been taken off the pool's queue.
+     */
+    abstract void unmarkPooled();
+
+    public abstract String getNumber();
+
+    public abstract ParkingSpotType getType();
+
+    public abstract Vehicle getVehicle();
+
+    /**
+     * Parks the vehicle on this spot if it is free. A spot on a floor is
+     * taken through the floor so its free counts stay in step.
+     */
+    public boolean assignVehicle(Vehicle vehicle) {
+        ParkingFloor floor = getFloor();
+        if (floor != null) {
+            return floor.assignVehicleToSpot(vehicle, this);
+        }
+        if (!reserve()) {
+            return false;
+        }
+        if (!occupy(vehicle)) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Empties the spot and makes it free again.
+     */
+    public boolean removeVehicle() {
+        ParkingFloor floor = getFloor();
+        if (floor != null) {
+            return floor.release(this);
+        }
+        return vacate() && release();
+    }
+}
+
+/**
+ * A spot that keeps its state in its own fields.
+ */
+abstract class ObjectParkingSpot extends ParkingSpot {
+    private static final int FREE = 0;
+    private static final int RESERVED = 1;
+    private static final int OCCUPIED = 2;
+
+    private static final AtomicIntegerFieldUpdater<ObjectParkingSpot> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(ObjectParkingSpot.class, "state");
+    private static final AtomicReferenceFieldUpdater<ObjectParkingSpot, Vehicle> VEHICLE =
+            AtomicReferenceFieldUpdater.newUpdater(ObjectParkingSpot.class, Vehicle.class, "vehicle");
+    private static final AtomicIntegerFieldUpdater<ObjectParkingSpot> POOLED =
+            AtomicIntegerFieldUpdater.newUpdater(ObjectParkingSpot.class, "pooled");
+
     private String number;
-    private boolean free;
-    private Vehicle vehicle;
+    private int index = -1;
+    private ParkingFloor floor;
+    private volatile int state;
+    private volatile Vehicle vehicle;
+    private volatile int pooled;
     private ParkingSpotType type;
 
-    public ParkingSpot(ParkingSpotType type) {
+    ObjectParkingSpot(String number, ParkingSpotType type) {
+        this.number = number;
         this.type = type;
-        this.free = true;
+        this.state = FREE;
     }
 
+    @Override
     public boolean isFree() {
-        return free;
+        return state == FREE;
     }
 
-    public boolean assignVehicle(Vehicle vehicle) {
-        this.vehicle = vehicle;
-        free = false;
+    @Override
+    boolean reserve() {
+        return STATE.compareAndSet(this, FREE, RESERVED);
+    }
+
+    @Override
+    boolean release() {
+        return vehicle == null && STATE.compareAndSet(this, RESERVED, FREE);
+    }
+
+    @Override
+    boolean occupy(Vehicle vehicle) {
+        if (state != RESERVED || !VEHICLE.compareAndSet(this, null, vehicle)) {
+            return false;
+        }
+        if (!STATE.compareAndSet(this, RESERVED, OCCUPIED)) {
+            VEHICLE.compareAndSet(this, vehicle, null);
+            return false;
+        }
         return true;
     }
 
-    public boolean removeVehicle() {
+    @Override
+    boolean vacate() {
+        if (!STATE.compareAndSet(this, OCCUPIED, RESERVED)) {
+            return false;
+        }
         this.vehicle = null;
-        free = true;
         return true;
     }
 
+    @Override
+    ParkingFloor getFloor() {
+        return floor;
+    }
+
+    @Override
+    void attach(ParkingFloor floor, int index) {
+        this.floor = floor;
+        this.index = index;
+    }
+
+    @Override
+    int getIndex() {
+        return index;
+    }
+
+    @Override
+    boolean markPooled() {
+        return POOLED.compareAndSet(this, 0, 1);
+    }
+
+    @Override
+    void unmarkPooled() {
+        pooled = 0;
+    }
+
+    @Override
+    public String getNumber() {
+        return number;
+    }
+
+    @Override
     public ParkingSpotType getType() {
         return type;
     }
 
+    @Override
     public Vehicle getVehicle() {
         return vehicle;
     }
 }
 
-class HandicappedSpot extends ParkingSpot {
+class HandicappedSpot extends ObjectParkingSpot {
     public HandicappedSpot() {
-        super(ParkingSpotType.HANDICAPPED);
+        super(null, ParkingSpotType.HANDICAPPED);
+    }
+
+    public HandicappedSpot(String number) {
+        super(number, ParkingSpotType.HANDICAPPED);
     }
 }
 
-class CompactSpot extends ParkingSpot {
+class CompactSpot extends ObjectParkingSpot {
     public CompactSpot() {
-        super(ParkingSpotType.COMPACT);
+        super(null, ParkingSpotType.COMPACT);
+    }
+
+    public CompactSpot(String number) {
+        super(number, ParkingSpotType.COMPACT);
     }
 }
 
-class LargeSpot extends ParkingSpot {
+class LargeSpot extends ObjectParkingSpot {
     public LargeSpot() {
-        super(ParkingSpotType.LARGE);
+        super(null, ParkingSpotType.LARGE);
+    }
+
+    public LargeSpot(String number) {
+        super(number, ParkingSpotType.LARGE);
     }
 }
 
-class MotorbikeSpot extends ParkingSpot {
+class MotorbikeSpot extends ObjectParkingSpot {
     public MotorbikeSpot() {
-        super(ParkingSpotType.MOTORBIKE);
+        super(null, ParkingSpotType.MOTORBIKE);
+    }
+
+    public MotorbikeSpot(String number) {
+        super(number, ParkingSpotType.MOTORBIKE);
     }
 }
 
-class ElectricSpot extends ParkingSpot {
+class ElectricSpot extends ObjectParkingSpot {
+    private static final double DEFAULT_CHARGER_KW = 11.0;
+
+    private double chargerKw;
+
     public ElectricSpot() {
-        super(ParkingSpotType.ELECTRIC);
+        this(null, DEFAULT_CHARGER_KW);
+    }
+
+    public ElectricSpot(String number) {
+        this(number, DEFAULT_CHARGER_KW);
+    }
+
+    public ElectricSpot(String number, double chargerKw) {
+        super(number, ParkingSpotType.ELECTRIC);
+        this.chargerKw = chargerKw;
+    }
+
+    /**
+     * Maximum power the charger at this spot can deliver.
+     */
+    public double getChargerKw() {
+        return chargerKw;
     }
 }
@@ -6,26 +6,44 @@ import java.util.Date;
  * Represents a parking ticket issued to a vehicle.
  */
 public class ParkingTicket {
-    private String ticketNumber;
+    private long ticketId;
     private Date issuedAt;
     private Date payedAt;
     private double payedAmount;
     private ParkingSpot parkingSpot;
+    private ParkingFloor parkingFloor;
+    private ParkingSpotType spotType;
 
     public ParkingTicket() {
         this.issuedAt = new Date();
     }
 
-    public void setTicketNumber(String ticketNumber) {
-        this.ticketNumber = ticketNumber;
+    void setTicketId(long ticketId) {
+        this.ticketId = ticketId;
+    }
+
+    void setIssuedAt(long issuedAtMillis) {
+        this.issuedAt = new Date(issuedAtMillis);
     }
 
     public void setParkingSpot(ParkingSpot spot) {
         this.parkingSpot = spot;
     }
 
+    void setParkingFloor(ParkingFloor parkingFloor) {
+        this.parkingFloor = parkingFloor;
+    }
+
+    void setSpotType(ParkingSpotType spotType) {
+        this.spotType = spotType;
+    }
+
+    public long getTicketId() {
+        return ticketId;
+    }
+
     public String getTicketNumber() {
-        return ticketNumber;
+        return TicketIdGenerator.format(ticketId);
     }
 
     public Date getIssuedAt() {
@@ -35,4 +53,29 @@ public class ParkingTicket {
     public ParkingSpot getParkingSpot() {
         return parkingSpot;
     }
+
+    void markPaid(double amount, long payedAtMillis) {
+        this.payedAmount = amount;
+        this.payedAt = new Date(payedAtMillis);
+    }
+
+    public boolean isPaid() {
+        return payedAt != null;
+    }
+
+    public Date getPayedAt() {
+        return payedAt;
+    }
+
+    public double getPayedAmount() {
+        return payedAmount;
+    }
+
+    public ParkingFloor getParkingFloor() {
+        return parkingFloor;
+    }
+
+    public ParkingSpotType getSpotType() {
+        return spotType;
+    }
 }
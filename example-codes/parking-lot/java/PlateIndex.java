@@ -0,0 +1,143 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Finds parked vehicles by licence plate.
+ * Plates are normalised (upper case, letters and digits only) and kept in a
+ * sorted concurrent map for exact and prefix lookups. For noisy camera reads
+ * every plate is also indexed under each variant with one character deleted;
+ * two plates within one substitution, insertion or deletion of each other
+ * always share such a variant, so a fuzzy lookup only has to probe the
+ * variants of the query instead of scanning the garage.
+ */
+class PlateIndex {
+    private NavigableMap<String, ParkingTicket> byPlate;
+    private Map<String, Set<String>> byDeletionVariant;
+
+    PlateIndex() {
+        this.byPlate = new ConcurrentSkipListMap<>();
+        this.byDeletionVariant = new ConcurrentHashMap<>();
+    }
+
+    void add(String licenseNumber, ParkingTicket ticket) {
+        String plate = normalize(licenseNumber);
+        if (plate.isEmpty()) {
+            return;
+        }
+        byPlate.put(plate, ticket);
+        for (int i = 0; i < plate.length(); i++) {
+            byDeletionVariant.compute(deleteAt(plate, i), (variant, plates) -> {
+                Set<String> result = plates == null ? ConcurrentHashMap.newKeySet() : plates;
+                result.add(plate);
+                return result;
+            });
+        }
+    }
+
+    void remove(String licenseNumber, ParkingTicket ticket) {
+        String plate = normalize(licenseNumber);
+        if (!byPlate.remove(plate, ticket)) {
+            return;
+        }
+        for (int i = 0; i < plate.length(); i++) {
+            byDeletionVariant.computeIfPresent(deleteAt(plate, i), (variant, plates) -> {
+                // The same plate may have been parked again in the meantime.
+                if (!byPlate.containsKey(plate)) {
+                    plates.remove(plate);
+                }
+                return plates.isEmpty() ? null : plates;
+            });
+        }
+    }
+
+    ParkingTicket find(String licenseNumber) {
+        return byPlate.get(normalize(licenseNumber));
+    }
+
+    List<ParkingTicket> findByPrefix(String prefix) {
+        String normalized = normalize(prefix);
+        return new ArrayList<>(byPlate.subMap(normalized, true, normalized + Character.MAX_VALUE, false).values());
+    }
+
+    /**
+     * Returns the tickets of all plates at most one character off the given
+     * read, the exact match first.
+     */
+    List<ParkingTicket> findFuzzy(String licenseNumber) {
+        String read = normalize(licenseNumber);
+        List<ParkingTicket> matches = new ArrayList<>();
+        ParkingTicket exact = byPlate.get(read);
+        if (exact != null) {
+            matches.add(exact);
+        }
+        Set<String> candidates = new HashSet<>();
+        // The read with one character missing or wrong.
+        addAll(candidates, byDeletionVariant.get(read));
+        for (int i = 0; i < read.length(); i++) {
+            String variant = deleteAt(read, i);
+            // The read with one extra character.
+            if (byPlate.containsKey(variant)) {
+                candidates.add(variant);
+            }
+            addAll(candidates, byDeletionVariant.get(variant));
+        }
+        candidates.remove(read);
+        for (String plate : candidates) {
+            ParkingTicket ticket = byPlate.get(plate);
+            if (ticket != null && withinOneEdit(read, plate)) {
+                matches.add(ticket);
+            }
+        }
+        return matches;
+    }
+
+    private static void addAll(Set<String> target, Set<String> source) {
+        target.addAll(source == null ? Collections.emptySet() : source);
+    }
+
+    static String normalize(String licenseNumber) {
+        if (licenseNumber == null) {
+            return "";
+        }
+        StringBuilder plate = new StringBuilder(licenseNumber.length());
+        for (int i = 0; i < licenseNumber.length(); i++) {
+            char c = licenseNumber.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                plate.append(Character.toUpperCase(c));
+            }
+        }
+        return plate.toString();
+    }
+
+    private static String deleteAt(String plate, int index) {
+        return plate.substring(0, index) + plate.substring(index + 1);
+    }
+
+    private static boolean withinOneEdit(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > 1) {
+            return false;
+        }
+        if (a.length() > b.length()) {
+            String tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int i = 0;
+        while (i < a.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (a.length() == b.length()) {
+            return a.regionMatches(i + 1, b, i + 1, a.length() - i - 1);
+        }
+        return a.regionMatches(i, b, i + 1, a.length() - i);
+    }
+}
@@ -0,0 +1,130 @@
+package parkinglot;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Replays noisy camera reads against the lot's plate index. 50,000 cars
+ * with random plates park, then 200,000 reads each carry one OCR-style
+ * error: a look-alike character swapped in, a character dropped or one
+ * added. Every read must find the car it came from; the latency of each
+ * lookup is reported after a warm-up pass. Releasing every car must leave
+ * the index empty.
+ *
+ * Run with {@code java -cp out parkinglot.PlateLookupSimulation}; exits
+ * with status 1 on any violation.
+ */
+public class PlateLookupSimulation {
+    private static final String LETTERS = "ABCDEFGHJKLMNPRSTUVWXYZ";
+    private static final String DIGITS = "0123456789";
+    // Characters a camera confuses, each followed by what it reads it as.
+    private static final String[] LOOK_ALIKES = {"0O", "O0", "1I", "I1", "8B", "B8", "5S", "S5", "2Z", "Z2"};
+
+    public static void main(String[] args) {
+        int cars = 50_000;
+        int reads = 200_000;
+        ParkingLot lot = new ParkingLot("Plates", "", 0);
+        for (int f = 0; f < 2; f++) {
+            ParkingFloor floor = new ParkingFloor("F" + f);
+            for (int i = 0; i < cars / 2; i++) {
+                floor.addParkingSpot("F" + f + "-" + i, ParkingSpotType.COMPACT);
+            }
+            lot.addParkingFloor(floor);
+        }
+
+        Random random = new Random(5);
+        Set<String> used = new HashSet<>();
+        String[] plates = new String[cars];
+        ParkingTicket[] tickets = new ParkingTicket[cars];
+        for (int i = 0; i < cars; i++) {
+            String plate;
+            do {
+                plate = randomPlate(random);
+            } while (!used.add(plate));
+            plates[i] = plate;
+            tickets[i] = lot.getNewParkingTicket(new Car(plate));
+        }
+
+        int missed = 0;
+        int candidates = 0;
+        LogHistogram latency = null;
+        for (int pass = 0; pass < 2; pass++) {
+            latency = new LogHistogram();
+            missed = 0;
+            candidates = 0;
+            Random errors = new Random(6);
+            for (int i = 0; i < reads; i++) {
+                int car = errors.nextInt(cars);
+                String read = misread(errors, plates[car]);
+                long start = System.nanoTime();
+                List<ParkingTicket> matches = lot.findTicketsByPlateRead(read);
+                latency.record(System.nanoTime() - start);
+                candidates += matches.size();
+                if (!matches.contains(tickets[car])) {
+                    missed++;
+                }
+            }
+        }
+        System.out.printf("%,d reads with one error over %,d parked cars: missed %d, %.2f matches per read, "
+                        + "p50 %.1f us, p99 %.1f us%n",
+                reads, cars, missed, (double) candidates / reads,
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3);
+
+        for (ParkingTicket ticket : tickets) {
+            lot.releaseTicket(ticket);
+        }
+        int left = lot.findTicketsByPlatePrefix("").size();
+        int found = 0;
+        for (String plate : plates) {
+            if (lot.findTicketByPlate(plate) != null || !lot.findTicketsByPlateRead(plate).isEmpty()) {
+                found++;
+            }
+        }
+        System.out.printf("after releasing every car: %d plates indexed, %d still found%n", left, found);
+
+        if (missed > 0 || left > 0 || found > 0) {
+            System.out.println("FAILED: a read missed its car or the index kept a released plate");
+            System.exit(1);
+        }
+    }
+
+    private static String randomPlate(Random random) {
+        StringBuilder plate = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            plate.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        for (int i = 0; i < 4; i++) {
+            plate.append(DIGITS.charAt(random.nextInt(DIGITS.length())));
+        }
+        return plate.toString();
+    }
+
+    /**
+     * The plate with one character swapped for a look-alike (or any other
+     * character if it has none), dropped, or added.
+     */
+    private static String misread(Random random, String plate) {
+        int at = random.nextInt(plate.length());
+        switch (random.nextInt(3)) {
+            case 0:
+                char c = plate.charAt(at);
+                char wrong = c;
+                for (String pair : LOOK_ALIKES) {
+                    if (pair.charAt(0) == c) {
+                        wrong = pair.charAt(1);
+                    }
+                }
+                while (wrong == c) {
+                    wrong = LETTERS.charAt(random.nextInt(LETTERS.length()));
+                }
+                return plate.substring(0, at) + wrong + plate.substring(at + 1);
+            case 1:
+                return plate.substring(0, at) + plate.substring(at + 1);
+            default:
+                char extra = DIGITS.charAt(random.nextInt(DIGITS.length()));
+                return plate.substring(0, at) + extra + plate.substring(at);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package parkinglot;
+
+/**
+ * An advance booking of one spot of a type for a time window.
+ */
+public class Reservation {
+    private long id;
+    private ParkingSpotType spotType;
+    private long startMillis;
+    private long endMillis;
+    private volatile boolean used;
+
+    Reservation(long id, ParkingSpotType spotType, long startMillis, long endMillis) {
+        this.id = id;
+        this.spotType = spotType;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public ParkingSpotType getSpotType() {
+        return spotType;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    public boolean isUsed() {
+        return used;
+    }
+
+    synchronized boolean markUsed() {
+        if (used) {
+            return false;
+        }
+        used = true;
+        return true;
+    }
+
+    /**
+     * Makes the reservation usable again after an admission that could not
+     * find a spot.
+     */
+    synchronized void markUnused() {
+        used = false;
+    }
+}
@@ -0,0 +1,207 @@
+package parkinglot;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Capacity calendar for advance reservations.
+ * Time is cut into 15-minute slots. The calendar covers a rolling window of
+ * slotCount slots starting at the current one, kept as a ring: as the clock
+ * moves on, slots that have passed are cleared and reused for the far end of
+ * the window. For every spot type a segment tree with lazy propagation over
+ * the ring holds the number of reservations overlapping each slot, so "is
+ * there room for one more between 18:00 and 23:00" is a range-max query and
+ * booking it a range-add, both in O(log slots).
+ *
+ * The booked count of the current slot, which walk-in ticketing checks on
+ * every arrival, is published in a volatile field and read without locking.
+ */
+class ReservationCalendar {
+    static final long SLOT_MILLIS = 15 * 60 * 1000L;
+
+    private Map<ParkingSpotType, SlotTree> trees;
+
+    ReservationCalendar(long nowMillis, int slotCount) {
+        this.trees = new EnumMap<>(ParkingSpotType.class);
+        for (ParkingSpotType type : ParkingSpotType.values()) {
+            trees.put(type, new SlotTree(slotCount, slotOf(nowMillis)));
+        }
+    }
+
+    /**
+     * Books one spot of the type for [startMillis, endMillis) if no slot in
+     * that range already holds capacity reservations. Returns false as well
+     * when the window starts before the current slot or ends beyond the
+     * calendar.
+     */
+    boolean tryBook(ParkingSpotType type, long startMillis, long endMillis, int capacity, long nowMillis) {
+        long first = slotOf(startMillis);
+        long last = lastSlotOf(endMillis);
+        if (first > last) {
+            throw new IllegalArgumentException("Reservation must end after it starts");
+        }
+        return trees.get(type).addIfBelow(first, last, capacity, slotOf(nowMillis));
+    }
+
+    /**
+     * Gives back the part of a booking from fromMillis on.
+     */
+    void release(ParkingSpotType type, long fromMillis, long endMillis, long nowMillis) {
+        trees.get(type).add(slotOf(fromMillis), lastSlotOf(endMillis), -1, slotOf(nowMillis));
+    }
+
+    /**
+     * Number of reservations of the type overlapping the current slot. Like
+     * the other calls, this moves the calendar on to nowMillis.
+     */
+    int getBookedCount(ParkingSpotType type, long nowMillis) {
+        return trees.get(type).bookedAt(slotOf(nowMillis));
+    }
+
+    private static long slotOf(long millis) {
+        return millis / SLOT_MILLIS;
+    }
+
+    private static long lastSlotOf(long endMillis) {
+        return (endMillis + SLOT_MILLIS - 1) / SLOT_MILLIS - 1;
+    }
+
+    /**
+     * Range-add / range-max segment tree over a ring of slots. Slots are
+     * passed in as absolute slot numbers; slot s lives at position
+     * s % size while it is inside [baseSlot, baseSlot + size).
+     */
+    private static class SlotTree {
+        private int size;
+        private int[] max;
+        private int[] pending;
+        private long baseSlot;
+        // baseSlot << 32 | booked count of baseSlot
+        private volatile long current;
+
+        SlotTree(int size, long baseSlot) {
+            this.size = size;
+            this.max = new int[4 * size];
+            this.pending = new int[4 * size];
+            this.baseSlot = baseSlot;
+            this.current = baseSlot << 32;
+        }
+
+        int bookedAt(long slot) {
+            long published = current;
+            if (published >>> 32 == slot) {
+                return (int) published;
+            }
+            synchronized (this) {
+                roll(slot);
+                if (slot < baseSlot || slot >= baseSlot + size) {
+                    return 0;
+                }
+                int position = position(slot);
+                return max(1, 0, size - 1, position, position);
+            }
+        }
+
+        synchronized boolean addIfBelow(long first, long last, int limit, long nowSlot) {
+            roll(nowSlot);
+            if (first < baseSlot || last >= baseSlot + size) {
+                return false;
+            }
+            if (rangeMax(first, last) >= limit) {
+                return false;
+            }
+            rangeAdd(first, last, 1);
+            publish();
+            return true;
+        }
+
+        synchronized void add(long first, long last, int delta, long nowSlot) {
+            roll(nowSlot);
+            first = Math.max(first, baseSlot);
+            last = Math.min(last, baseSlot + size - 1);
+            if (first <= last) {
+                rangeAdd(first, last, delta);
+                publish();
+            }
+        }
+
+        // Clears the slots before nowSlot so their positions can be reused.
+        private void roll(long nowSlot) {
+            if (nowSlot <= baseSlot) {
+                return;
+            }
+            if (nowSlot - baseSlot >= size) {
+                Arrays.fill(max, 0);
+                Arrays.fill(pending, 0);
+            } else {
+                for (long slot = baseSlot; slot < nowSlot; slot++) {
+                    int position = position(slot);
+                    int booked = max(1, 0, size - 1, position, position);
+                    if (booked != 0) {
+                        add(1, 0, size - 1, position, position, -booked);
+                    }
+                }
+            }
+            baseSlot = nowSlot;
+            publish();
+        }
+
+        private void publish() {
+            int position = position(baseSlot);
+            current = baseSlot << 32 | max(1, 0, size - 1, position, position);
+        }
+
+        private int position(long slot) {
+            return (int) (slot % size);
+        }
+
+        private int rangeMax(long first, long last) {
+            int from = position(first);
+            int to = position(last);
+            if (from <= to) {
+                return max(1, 0, size - 1, from, to);
+            }
+            return Math.max(max(1, 0, size - 1, from, size - 1), max(1, 0, size - 1, 0, to));
+        }
+
+        private void rangeAdd(long first, long last, int delta) {
+            int from = position(first);
+            int to = position(last);
+            if (from <= to) {
+                add(1, 0, size - 1, from, to, delta);
+            } else {
+                add(1, 0, size - 1, from, size - 1, delta);
+                add(1, 0, size - 1, 0, to, delta);
+            }
+        }
+
+        private void add(int node, int low, int high, int from, int to, int delta) {
+            if (to < low || high < from) {
+                return;
+            }
+            if (from <= low && high <= to) {
+                max[node] += delta;
+                pending[node] += delta;
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            add(2 * node, low, middle, from, to, delta);
+            add(2 * node + 1, middle + 1, high, from, to, delta);
+            max[node] = Math.max(max[2 * node], max[2 * node + 1]) + pending[node];
+        }
+
+        // Pending adds stay on the node and are summed on the way down.
+        private int max(int node, int low, int high, int from, int to) {
+            if (to < low || high < from) {
+                return Integer.MIN_VALUE;
+            }
+            if (from <= low && high <= to) {
+                return max[node];
+            }
+            int middle = (low + high) >>> 1;
+            return pending[node] + Math.max(max(2 * node, low, middle, from, to),
+                    max(2 * node + 1, middle + 1, high, from, to));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package parkinglot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stress test for advance reservations.
+ * <ul>
+ * <li>8 threads place 100,000 overlapping bookings for 300 LARGE spots; a
+ * recount of the accepted bookings must never exceed 300 in any slot.</li>
+ * <li>A holder arriving while a walk-in has the only spot is refused, keeps
+ * the reservation and is admitted once the walk-in leaves; both attempts
+ * show up in the lot metrics.</li>
+ * <li>The calendar is driven through 400 simulated days and must keep
+ * accepting bookings and refusing out-of-horizon windows with null.</li>
+ * </ul>
+ * Run with {@code java -cp out parkinglot.ReservationStress}; exits with
+ * status 1 on any violation.
+ */
+public class ReservationStress {
+    private static final long SLOT = ReservationCalendar.SLOT_MILLIS;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static boolean failed;
+
+    public static void main(String[] args) throws InterruptedException {
+        overlappingBookings();
+        holderRefusedWhileFull();
+        rollingCalendar();
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void overlappingBookings() throws InterruptedException {
+        int capacity = 300;
+        ParkingLot lot = new ParkingLot("Reservations", "", 0);
+        ParkingFloor floor = new ParkingFloor("F1");
+        for (int i = 0; i < capacity; i++) {
+            floor.addParkingSpot(new LargeSpot("L" + i));
+        }
+        lot.addParkingFloor(floor);
+
+        long now = System.currentTimeMillis();
+        List<Reservation> accepted = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[8];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads.length; t++) {
+            Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 12_500; i++) {
+                    long from = now + SLOT * (1 + random.nextInt(2000));
+                    long to = from + SLOT * (1 + random.nextInt(40)) - random.nextInt(1000);
+                    Reservation reservation = lot.reserve(ParkingSpotType.LARGE, from, to);
+                    if (reservation != null) {
+                        accepted.add(reservation);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int[] overlap = new int[2100];
+        long base = now / SLOT;
+        int maxOverlap = 0;
+        for (Reservation reservation : accepted) {
+            long first = reservation.getStartMillis() / SLOT;
+            long last = (reservation.getEndMillis() + SLOT - 1) / SLOT - 1;
+            for (long slot = first; slot <= last; slot++) {
+                maxOverlap = Math.max(maxOverlap, ++overlap[(int) (slot - base)]);
+            }
+        }
+        System.out.printf("100,000 bookings from 8 threads in %d ms: accepted %,d, max overlap %d of %d%n",
+                elapsedMillis, accepted.size(), maxOverlap, capacity);
+        check(maxOverlap <= capacity, "a slot is overbooked");
+    }
+
+    private static void holderRefusedWhileFull() {
+        ParkingLot lot = new ParkingLot("Gate", "", 0);
+        ParkingFloor floor = new ParkingFloor("F1");
+        floor.addParkingSpot(new CompactSpot("C1"));
+        lot.addParkingFloor(floor);
+
+        ParkingTicket walkIn = lot.getNewParkingTicket(new Car("WALK-IN"));
+        long now = System.currentTimeMillis();
+        Reservation reservation = lot.reserve(ParkingSpotType.COMPACT, now, now + 60 * 60 * 1000);
+        ParkingTicket refused = lot.getNewParkingTicket(new Car("HOLDER"), reservation, null);
+        lot.settleTicket(walkIn);
+        ParkingTicket admitted = lot.getNewParkingTicket(new Car("HOLDER"), reservation, null);
+        boolean walkInHeldBack = lot.getNewParkingTicket(new Car("LATE")) == null;
+        ParkingMetrics metrics = lot.getMetrics();
+        System.out.printf("full lot: holder refused %b, admitted after walk-in left %b, reservation used %b, "
+                        + "tickets issued %d, COMPACT rejections %d%n",
+                refused == null, admitted != null, reservation.isUsed(),
+                metrics.getTicketsIssued(), metrics.getRejections(ParkingSpotType.COMPACT));
+        check(walkIn != null && reservation != null && refused == null && admitted != null
+                && reservation.isUsed() && walkInHeldBack, "reservation lost at the gate");
+        // The walk-in and the holder were issued tickets; the holder's first
+        // try and the late walk-in were turned away.
+        check(metrics.getTicketsIssued() == 2 && metrics.getRejections(ParkingSpotType.COMPACT) == 2,
+                "reservation admissions missing from the metrics");
+    }
+
+    private static void rollingCalendar() {
+        int horizon = 90 * 24 * 4;
+        long origin = System.currentTimeMillis();
+        ReservationCalendar calendar = new ReservationCalendar(origin, horizon);
+        int accepted = 0;
+        int refused = 0;
+        for (int day = 0; day < 400; day++) {
+            long now = origin + day * DAY;
+            // Fill the evening a week out, then check it is full.
+            long evening = now + 7 * DAY;
+            for (int i = 0; i < 3; i++) {
+                if (calendar.tryBook(ParkingSpotType.LARGE, evening, evening + 5 * 60 * 60 * 1000, 3, now)) {
+                    accepted++;
+                }
+            }
+            if (calendar.tryBook(ParkingSpotType.LARGE, evening, evening + SLOT, 3, now)) {
+                check(false, "full evening accepted a fourth booking on day " + day);
+            }
+            if (calendar.tryBook(ParkingSpotType.LARGE, now + 91 * DAY, now + 92 * DAY, 3, now)
+                    || calendar.tryBook(ParkingSpotType.LARGE, now - DAY, now - DAY + SLOT, 3, now)) {
+                check(false, "out-of-horizon window accepted on day " + day);
+            } else {
+                refused++;
+            }
+            // The evening booked a week ago starts now.
+            check(calendar.getBookedCount(ParkingSpotType.LARGE, now) == (day >= 7 ? 3 : 0),
+                    "current slot has the wrong count on day " + day);
+        }
+        long now = origin + 400 * DAY;
+        long reads = 5_000_000;
+        long sink = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < reads; i++) {
+            sink += calendar.getBookedCount(ParkingSpotType.LARGE, now);
+        }
+        double nanosPerRead = (double) (System.nanoTime() - start) / reads;
+        System.out.printf("400 simulated days: accepted %d of 1200 evening bookings, refused %d out-of-horizon windows, "
+                + "current-slot read %.1f ns%s%n", accepted, refused, nanosPerRead, sink < 0 ? "!" : "");
+        check(accepted == 1200 && refused == 400, "calendar stopped accepting bookings");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            failed = true;
+        }
+    }
+}
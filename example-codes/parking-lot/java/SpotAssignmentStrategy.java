@@ -0,0 +1,31 @@
+package parkinglot;
+
+/**
+ * Decides which free spot of a floor is handed to an arriving vehicle.
+ * Implementations must be safe to call from many panels at once.
+ */
+public interface SpotAssignmentStrategy {
+    /**
+     * Registers a spot; called by the floor while it is being set up.
+     */
+    void addSpot(ParkingSpot spot);
+
+    /**
+     * Reserves a free spot of the given type for a vehicle arriving through
+     * the given entrance, or returns null if there is none. The entrance may
+     * be null when it is not known.
+     */
+    ParkingSpot tryAcquire(ParkingSpotType type, EntrancePanel entrance);
+
+    /**
+     * Reserves a specific spot chosen by the caller.
+     */
+    boolean claim(ParkingSpot spot);
+
+    /**
+     * Returns an emptied spot to the free spots.
+     */
+    boolean release(ParkingSpot spot);
+
+    int getFreeSpotCount(ParkingSpotType type);
+}
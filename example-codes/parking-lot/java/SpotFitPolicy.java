@@ -0,0 +1,72 @@
+package parkinglot;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The spot types each vehicle type may park in, best fit first.
+ * The default policy is the strict one-type-per-vehicle mapping;
+ * {@link #overflow()} lets vehicles take other spots they fit in when their
+ * own type is full, e.g. a motorbike falls back to COMPACT and then LARGE.
+ */
+public class SpotFitPolicy {
+    private final ParkingSpotType[][] fits; // [vehicle type] -> spot types
+
+    public SpotFitPolicy() {
+        this(strictFits());
+    }
+
+    /**
+     * @param fits per vehicle type, the spot types to try in order; the
+     *             first one is the exact fit
+     */
+    public SpotFitPolicy(Map<VehicleType, ParkingSpotType[]> fits) {
+        this.fits = new ParkingSpotType[VehicleType.values().length][];
+        for (VehicleType type : VehicleType.values()) {
+            ParkingSpotType[] spotTypes = fits.get(type);
+            if (spotTypes == null || spotTypes.length == 0) {
+                throw new IllegalArgumentException("No spot types for " + type);
+            }
+            this.fits[type.ordinal()] = spotTypes.clone();
+        }
+    }
+
+    /**
+     * Motorbikes and electric vehicles overflow into COMPACT and then LARGE
+     * spots, as an electric vehicle is car-sized once it is not charging;
+     * cars overflow into LARGE spots; trucks and vans only fit LARGE spots.
+     */
+    public static SpotFitPolicy overflow() {
+        Map<VehicleType, ParkingSpotType[]> fits = new EnumMap<>(VehicleType.class);
+        fits.put(VehicleType.CAR, new ParkingSpotType[] {ParkingSpotType.COMPACT, ParkingSpotType.LARGE});
+        fits.put(VehicleType.TRUCK, new ParkingSpotType[] {ParkingSpotType.LARGE});
+        fits.put(VehicleType.VAN, new ParkingSpotType[] {ParkingSpotType.LARGE});
+        fits.put(VehicleType.MOTORBIKE, new ParkingSpotType[] {ParkingSpotType.MOTORBIKE,
+                ParkingSpotType.COMPACT, ParkingSpotType.LARGE});
+        fits.put(VehicleType.ELECTRIC, new ParkingSpotType[] {ParkingSpotType.ELECTRIC,
+                ParkingSpotType.COMPACT, ParkingSpotType.LARGE});
+        return new SpotFitPolicy(fits);
+    }
+
+    /**
+     * The spot types to try for the vehicle type, best fit first. The
+     * returned array is shared and must not be modified.
+     */
+    ParkingSpotType[] getFits(VehicleType type) {
+        return fits[type.ordinal()];
+    }
+
+    public ParkingSpotType getExactFit(VehicleType type) {
+        return fits[type.ordinal()][0];
+    }
+
+    private static Map<VehicleType, ParkingSpotType[]> strictFits() {
+        Map<VehicleType, ParkingSpotType[]> fits = new EnumMap<>(VehicleType.class);
+        fits.put(VehicleType.CAR, new ParkingSpotType[] {ParkingSpotType.COMPACT});
+        fits.put(VehicleType.TRUCK, new ParkingSpotType[] {ParkingSpotType.LARGE});
+        fits.put(VehicleType.VAN, new ParkingSpotType[] {ParkingSpotType.LARGE});
+        fits.put(VehicleType.MOTORBIKE, new ParkingSpotType[] {ParkingSpotType.MOTORBIKE});
+        fits.put(VehicleType.ELECTRIC, new ParkingSpotType[] {ParkingSpotType.ELECTRIC});
+        return fits;
+    }
+}
@@ -0,0 +1,148 @@
+package parkinglot;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Compares the strict spot mapping with {@link SpotFitPolicy#overflow()}.
+ * Four floors of 60 MOTORBIKE, 300 COMPACT, 100 LARGE and 40 ELECTRIC
+ * spots take 400,000 walk-ins with exponential stays, in simulated time.
+ * Every few hours a motorbike rush or an electric vehicle rush alternates
+ * with ordinary traffic. Both policies see the same arrivals from the same
+ * seed; the rejection rate, the fit efficiency and the latency of each
+ * ticket are reported.
+ *
+ * Overflow must turn away fewer vehicles than the strict mapping, and must
+ * park no vehicle in a spot type its policy does not allow.
+ *
+ * Run with {@code java -cp out parkinglot.SpotFitSimulation [arrivals]};
+ * exits with status 1 if a check fails.
+ */
+public class SpotFitSimulation {
+    private static final long MINUTE = 60_000L;
+    private static final long RUSH_PERIOD = 4 * 60 * MINUTE;
+    private static final long MEAN_STAY = 90 * MINUTE;
+    // Demand for about 2,000 parked vehicles against 2,000 spots.
+    private static final double MEAN_GAP_MILLIS = MEAN_STAY / 2_000.0;
+
+    public static void main(String[] args) {
+        int arrivals = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        // Warm up so both runs are measured with compiled code.
+        simulate("warm-up", new SpotFitPolicy(), arrivals / 4, false);
+        simulate("warm-up", SpotFitPolicy.overflow(), arrivals / 4, false);
+        double strict = simulate("strict", new SpotFitPolicy(), arrivals, true);
+        double overflow = simulate("overflow", SpotFitPolicy.overflow(), arrivals, true);
+        if (!(overflow < strict)) {
+            System.out.println("FAILED: overflow did not reduce rejections");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one simulation and returns its rejection rate.
+     */
+    private static double simulate(String name, SpotFitPolicy policy, int arrivals, boolean report) {
+        ParkingLot lot = new ParkingLot(name, "", 0);
+        for (int f = 0; f < 4; f++) {
+            ParkingFloor floor = new ParkingFloor("F" + f);
+            addSpots(floor, "M", 60, ParkingSpotType.MOTORBIKE);
+            addSpots(floor, "C", 300, ParkingSpotType.COMPACT);
+            addSpots(floor, "L", 100, ParkingSpotType.LARGE);
+            addSpots(floor, "E", 40, ParkingSpotType.ELECTRIC);
+            lot.addParkingFloor(floor);
+        }
+        lot.setSpotFitPolicy(policy);
+
+        Random random = new Random(17);
+        PriorityQueue<Departure> departures = new PriorityQueue<>();
+        LogHistogram latency = new LogHistogram();
+        int misfits = 0;
+        double now = 0;
+        for (int i = 0; i < arrivals; i++) {
+            now += -Math.log(1 - random.nextDouble()) * MEAN_GAP_MILLIS;
+            while (!departures.isEmpty() && departures.peek().at <= now) {
+                lot.settleTicket(departures.poll().ticket);
+            }
+            Vehicle vehicle = arrival(random, "V" + i, (long) (now / RUSH_PERIOD) % 3);
+            long start = System.nanoTime();
+            ParkingTicket ticket = lot.getNewParkingTicket(vehicle);
+            latency.record(System.nanoTime() - start);
+            if (ticket != null) {
+                if (!fits(policy, vehicle.getType(), ticket.getParkingSpot().getType())) {
+                    misfits++;
+                }
+                double stay = -Math.log(1 - random.nextDouble()) * MEAN_STAY;
+                departures.add(new Departure(now + stay, ticket));
+            }
+        }
+        while (!departures.isEmpty()) {
+            lot.settleTicket(departures.poll().ticket);
+        }
+
+        SpotFitStats stats = lot.getSpotFitStats();
+        if (report) {
+            System.out.printf("%-8s %,d arrivals: %5.2f%% rejected, p50 %.1fus, p99 %.1fus per ticket, "
+                            + "fit efficiency %.2f%n",
+                    name, arrivals, stats.getRejectionRate() * 100,
+                    latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                    stats.getFitEfficiency());
+            if (misfits > 0) {
+                System.out.println("FAILED: " + misfits + " vehicles parked in a spot type they do not fit");
+                System.exit(1);
+            }
+        }
+        return stats.getRejectionRate();
+    }
+
+    /**
+     * Ordinary traffic is mostly cars. A motorbike rush (phase 1) or an
+     * electric vehicle rush (phase 2) triples the share of that type.
+     */
+    private static Vehicle arrival(Random random, String plate, long phase) {
+        int motorbikes = phase == 1 ? 30 : 10;
+        int electric = phase == 2 ? 24 : 8;
+        int roll = random.nextInt(100);
+        if (roll < motorbikes) {
+            return new Motorbike(plate);
+        }
+        roll -= motorbikes;
+        if (roll < electric) {
+            return new Electric(plate);
+        }
+        roll -= electric;
+        if (roll < 8) {
+            return random.nextBoolean() ? new Truck(plate) : new Van(plate);
+        }
+        return new Car(plate);
+    }
+
+    private static boolean fits(SpotFitPolicy policy, VehicleType vehicleType, ParkingSpotType spotType) {
+        for (ParkingSpotType allowed : policy.getFits(vehicleType)) {
+            if (allowed == spotType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addSpots(ParkingFloor floor, String prefix, int count, ParkingSpotType type) {
+        for (int i = 0; i < count; i++) {
+            floor.addParkingSpot(floor.getName() + prefix + i, type);
+        }
+    }
+
+    private static class Departure implements Comparable<Departure> {
+        private final double at;
+        private final ParkingTicket ticket;
+
+        Departure(double at, ParkingTicket ticket) {
+            this.at = at;
+            this.ticket = ticket;
+        }
+
+        @Override
+        public int compareTo(Departure other) {
+            return Double.compare(at, other.at);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package parkinglot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how walk-in vehicles were fitted: into a spot of their exact
+ * type, into a larger spot under an overflow {@link SpotFitPolicy}, or not
+ * at all. Counters are striped so the gates never contend on them.
+ */
+public class SpotFitStats {
+    private final LongAdder[] exactFits = newAdders(ParkingSpotType.values().length);
+    private final LongAdder[] overflowFits = newAdders(ParkingSpotType.values().length);
+    private final LongAdder[] rejections = newAdders(VehicleType.values().length);
+
+    void recordFit(ParkingSpotType spotType, boolean exact) {
+        (exact ? exactFits : overflowFits)[spotType.ordinal()].increment();
+    }
+
+    void recordRejection(VehicleType vehicleType) {
+        rejections[vehicleType.ordinal()].increment();
+    }
+
+    public long getExactFitCount(ParkingSpotType spotType) {
+        return exactFits[spotType.ordinal()].sum();
+    }
+
+    /**
+     * Vehicles that were given a spot of this type because their own type
+     * was full.
+     */
+    public long getOverflowFitCount(ParkingSpotType spotType) {
+        return overflowFits[spotType.ordinal()].sum();
+    }
+
+    public long getRejectionCount(VehicleType vehicleType) {
+        return rejections[vehicleType.ordinal()].sum();
+    }
+
+    /**
+     * Share of parked walk-ins that got a spot of their exact type; 1.0
+     * when nothing has been parked yet.
+     */
+    public double getFitEfficiency() {
+        long exact = sum(exactFits);
+        long total = exact + sum(overflowFits);
+        return total == 0 ? 1.0 : (double) exact / total;
+    }
+
+    /**
+     * Share of walk-ins that were turned away.
+     */
+    public double getRejectionRate() {
+        long rejected = sum(rejections);
+        long total = rejected + sum(exactFits) + sum(overflowFits);
+        return total == 0 ? 0.0 : (double) rejected / total;
+    }
+
+    private static long sum(LongAdder[] adders) {
+        long sum = 0;
+        for (LongAdder adder : adders) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,319 @@
+package parkinglot;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Struct-of-arrays spot storage for very large facilities.
+ * Instead of one {@link ParkingSpot} object per spot, spot numbers are
+ * interned to int ids through an open-addressing table of ids, and every
+ * attribute lives in a parallel array: the
+ * type in a byte array, the parked vehicle in a reference array and, per
+ * type, the free spots in a bitset. {@link ParkingSpot} instances are only
+ * created as views, holding nothing but the store and the id, when a caller
+ * asks for one.
+ *
+ * A store hosts the spots of one floor: create the floor with
+ * {@link ParkingFloor#ParkingFloor(String, SpotStore)} and add spots through
+ * it. The floor then uses the store as its {@link SpotAssignmentStrategy}.
+ *
+ * The capacity is fixed when the store is created. Acquiring and releasing
+ * spots is lock-free: a spot is taken by clearing its bit with a CAS.
+ */
+public class SpotStore implements SpotAssignmentStrategy {
+    private static final ParkingSpotType[] TYPES = ParkingSpotType.values();
+
+    private int[] idTable;                // open addressing on number hash, -1 when empty
+    private String[] numbers;
+    private byte[] types;
+    private AtomicReferenceArray<Vehicle> vehicles;
+    private AtomicLongArray[] freeBits;   // per type, bit set when the spot is free
+    private AtomicInteger[] freeCounts;   // per type
+    private int[] spotCounts;             // per type
+    private int size;
+    private ParkingFloor floor;
+
+    public SpotStore(int capacity) {
+        this.idTable = new int[Integer.highestOneBit(Math.max(1, capacity)) << 2];
+        Arrays.fill(idTable, -1);
+        this.numbers = new String[capacity];
+        this.types = new byte[capacity];
+        this.vehicles = new AtomicReferenceArray<>(capacity);
+        this.freeBits = new AtomicLongArray[TYPES.length];
+        this.freeCounts = new AtomicInteger[TYPES.length];
+        this.spotCounts = new int[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            freeBits[i] = new AtomicLongArray((capacity + 63) >>> 6);
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Adds a free spot; expected to be called while the facility is set up.
+     */
+    public synchronized void addSpot(String number, ParkingSpotType type) {
+        if (size == numbers.length) {
+            throw new IllegalStateException("Spot store is full");
+        }
+        int slot = slotOf(number);
+        if (idTable[slot] >= 0) {
+            throw new IllegalArgumentException("Duplicate spot number " + number);
+        }
+        int id = size++;
+        idTable[slot] = id;
+        numbers[id] = number;
+        types[id] = (byte) type.ordinal();
+        setBit(freeBits[type.ordinal()], id);
+        freeCounts[type.ordinal()].incrementAndGet();
+        spotCounts[type.ordinal()]++;
+    }
+
+    /**
+     * Copies the number and type of the spot; the spot object itself is
+     * not kept.
+     */
+    @Override
+    public void addSpot(ParkingSpot spot) {
+        addSpot(spot.getNumber(), spot.getType());
+    }
+
+    /**
+     * Returns a view of the spot with the given number, or null.
+     */
+    public ParkingSpot getSpot(String number) {
+        int id = idTable[slotOf(number)];
+        return id < 0 ? null : new SpotView(this, id);
+    }
+
+    /**
+     * Returns a view of the spot with the given id, the position it was
+     * added at.
+     */
+    ParkingSpot getSpot(int id) {
+        return new SpotView(this, id);
+    }
+
+    /**
+     * Takes a free spot of the given type and returns a view of it, or null
+     * if none is left. The caller parks the vehicle through the view.
+     */
+    public ParkingSpot tryAcquire(ParkingSpotType type) {
+        AtomicLongArray bits = freeBits[type.ordinal()];
+        for (int word = 0; word < bits.length(); word++) {
+            long value;
+            while ((value = bits.get(word)) != 0) {
+                long lowest = Long.lowestOneBit(value);
+                if (bits.compareAndSet(word, value, value & ~lowest)) {
+                    freeCounts[type.ordinal()].decrementAndGet();
+                    return new SpotView(this, (word << 6) + Long.numberOfTrailingZeros(lowest));
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public ParkingSpot tryAcquire(ParkingSpotType type, EntrancePanel entrance) {
+        return tryAcquire(type);
+    }
+
+    @Override
+    public boolean claim(ParkingSpot spot) {
+        return spot.reserve();
+    }
+
+    /**
+     * Marks an emptied spot free again.
+     */
+    @Override
+    public boolean release(ParkingSpot spot) {
+        return spot.release();
+    }
+
+    @Override
+    public int getFreeSpotCount(ParkingSpotType type) {
+        return freeCounts[type.ordinal()].get();
+    }
+
+    public int getSpotCount(ParkingSpotType type) {
+        return spotCounts[type.ordinal()];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    void setFloor(ParkingFloor floor) {
+        this.floor = floor;
+    }
+
+    boolean isFree(int id) {
+        return (freeBits[types[id]].get(id >>> 6) & (1L << id)) != 0;
+    }
+
+    boolean reserve(int id) {
+        if (clearBit(freeBits[types[id]], id)) {
+            freeCounts[types[id]].decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    boolean release(int id) {
+        if (vehicles.get(id) == null && setBit(freeBits[types[id]], id)) {
+            freeCounts[types[id]].incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parks a vehicle on a spot the caller has reserved.
+     */
+    boolean occupy(int id, Vehicle vehicle) {
+        return !isFree(id) && vehicles.compareAndSet(id, null, vehicle);
+    }
+
+    boolean vacate(int id) {
+        return !isFree(id) && vehicles.getAndSet(id, null) != null;
+    }
+
+    Vehicle getVehicle(int id) {
+        return vehicles.get(id);
+    }
+
+    String getNumber(int id) {
+        return numbers[id];
+    }
+
+    ParkingSpotType getType(int id) {
+        return TYPES[types[id]];
+    }
+
+    // Slot holding the id of the number, or the empty slot where it belongs.
+    private int slotOf(String number) {
+        int mask = idTable.length - 1;
+        int slot = (number.hashCode() * 0x9E3779B9) & mask;
+        while (idTable[slot] >= 0 && !numbers[idTable[slot]].equals(number)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean setBit(AtomicLongArray bits, int id) {
+        int word = id >>> 6;
+        long mask = 1L << id;
+        long value;
+        do {
+            value = bits.get(word);
+            if ((value & mask) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, value, value | mask));
+        return true;
+    }
+
+    private static boolean clearBit(AtomicLongArray bits, int id) {
+        int word = id >>> 6;
+        long mask = 1L << id;
+        long value;
+        do {
+            value = bits.get(word);
+            if ((value & mask) == 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, value, value & ~mask));
+        return true;
+    }
+
+    /**
+     * Flyweight {@link ParkingSpot} backed by a row of the store.
+     */
+    private static class SpotView extends ParkingSpot {
+        private final SpotStore store;
+        private final int id;
+
+        SpotView(SpotStore store, int id) {
+            this.store = store;
+            this.id = id;
+        }
+
+        @Override
+        public boolean isFree() {
+            return store.isFree(id);
+        }
+
+        @Override
+        boolean reserve() {
+            return store.reserve(id);
+        }
+
+        @Override
+        boolean release() {
+            return store.release(id);
+        }
+
+        @Override
+        boolean occupy(Vehicle vehicle) {
+            return store.occupy(id, vehicle);
+        }
+
+        @Override
+        boolean vacate() {
+            return store.vacate(id);
+        }
+
+        @Override
+        ParkingFloor getFloor() {
+            return store.floor;
+        }
+
+        @Override
+        void attach(ParkingFloor floor, int index) {
+            throw new IllegalStateException("Spot " + getNumber() + " belongs to a spot store");
+        }
+
+        @Override
+        int getIndex() {
+            return id;
+        }
+
+        @Override
+        boolean markPooled() {
+            throw new IllegalStateException("Spot " + getNumber() + " belongs to a spot store");
+        }
+
+        @Override
+        void unmarkPooled() {
+            throw new IllegalStateException("Spot " + getNumber() + " belongs to a spot store");
+        }
+
+        @Override
+        public String getNumber() {
+            return store.getNumber(id);
+        }
+
+        @Override
+        public ParkingSpotType getType() {
+            return store.getType(id);
+        }
+
+        @Override
+        public Vehicle getVehicle() {
+            return store.getVehicle(id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SpotView
+                    && ((SpotView) other).store == store && ((SpotView) other).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+}
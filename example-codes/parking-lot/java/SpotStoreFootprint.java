@@ -0,0 +1,72 @@
+package parkinglot;
+
+/**
+ * Measures the heap taken by a floor of spot objects against a floor
+ * backed by a {@link SpotStore}, then runs a lot on the store-backed floor
+ * to check that tickets are issued and settled through it.
+ *
+ * Run with {@code java -XX:+UseSerialGC -cp out parkinglot.SpotStoreFootprint [spots]}.
+ * The spot number strings are created up front and shared, so neither
+ * figure includes them.
+ */
+public class SpotStoreFootprint {
+    public static void main(String[] args) throws InterruptedException {
+        int spotCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        String[] numbers = new String[spotCount];
+        for (int i = 0; i < spotCount; i++) {
+            numbers[i] = "S" + i;
+        }
+
+        long before = usedHeap();
+        ParkingFloor objectFloor = new ParkingFloor("objects");
+        for (int i = 0; i < spotCount; i++) {
+            objectFloor.addParkingSpot(numbers[i], typeOf(i));
+        }
+        long objectBytes = usedHeap() - before;
+
+        before = usedHeap();
+        ParkingFloor storeFloor = new ParkingFloor("store", new SpotStore(spotCount));
+        for (int i = 0; i < spotCount; i++) {
+            storeFloor.addParkingSpot(numbers[i], typeOf(i));
+        }
+        long storeBytes = usedHeap() - before;
+
+        System.out.printf("%,d spots: spot objects %.1f B/spot, SpotStore %.1f B/spot%n",
+                spotCount, (double) objectBytes / spotCount, (double) storeBytes / spotCount);
+
+        ParkingLot lot = new ParkingLot("Footprint", "", 0);
+        lot.addParkingFloor(storeFloor);
+        int compact = storeFloor.getSpotCount(ParkingSpotType.COMPACT);
+        ParkingTicket[] tickets = new ParkingTicket[compact];
+        for (int i = 0; i < compact; i++) {
+            tickets[i] = lot.getNewParkingTicket(new Car("C" + i));
+        }
+        boolean full = lot.getNewParkingTicket(new Car("extra")) == null;
+        before = usedHeap();
+        int settled = 0;
+        for (ParkingTicket ticket : tickets) {
+            if (ticket != null && lot.settleTicket(ticket) >= 0) {
+                settled++;
+            }
+        }
+        System.out.printf("store-backed lot: issued %,d of %,d compact, refused when full %b, settled %,d, free again %,d%n",
+                lot.getActiveTicketCount() + settled, compact, full, settled,
+                lot.getFreeSpotCount(ParkingSpotType.COMPACT));
+        if (objectFloor.getSpotCount(ParkingSpotType.COMPACT) != compact) {
+            throw new IllegalStateException("floors differ");
+        }
+    }
+
+    private static ParkingSpotType typeOf(int i) {
+        return i % 5 == 0 ? ParkingSpotType.LARGE : ParkingSpotType.COMPACT;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
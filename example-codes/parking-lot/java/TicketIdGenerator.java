@@ -0,0 +1,49 @@
+package parkinglot;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of unique, monotonic 64-bit ticket ids.
+ * Layout: 41 bits of milliseconds since {@link #EPOCH}, 10 bits of node id
+ * and 12 bits of per-millisecond sequence. When a millisecond runs out of
+ * sequence numbers the generator borrows the next one, so ids never repeat.
+ */
+class TicketIdGenerator {
+    static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private final long nodeBits;
+    // (timestamp << SEQUENCE_BITS) | sequence of the last id handed out
+    private final AtomicLong lastStamp;
+
+    TicketIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.lastStamp = new AtomicLong();
+    }
+
+    long nextId() {
+        while (true) {
+            long last = lastStamp.get();
+            long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+            long next = now > last ? now : last + 1;
+            if (lastStamp.compareAndSet(last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+            }
+        }
+    }
+
+    /**
+     * Renders an id in the compact form printed on tickets.
+     */
+    static String format(long id) {
+        return "TICKET-" + Long.toString(id, 36).toUpperCase();
+    }
+}
@@ -0,0 +1,179 @@
+package parkinglot;
+
+import java.util.function.Consumer;
+
+/**
+ * Concurrent map from primitive ticket id to {@link ParkingTicket}.
+ * Keys and values live in parallel arrays per segment (open addressing with
+ * linear probing), so lookups do not box and entries need no node objects.
+ * Each segment has its own monitor; exit panels only contend when their
+ * tickets hash to the same segment.
+ */
+class TicketIndex {
+    private static final int SEGMENT_BITS = 5;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final long EMPTY = 0L; // never produced by TicketIdGenerator
+
+    private final Segment[] segments;
+
+    TicketIndex() {
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    ParkingTicket get(long ticketId) {
+        long hash = hash(ticketId);
+        return segmentFor(hash).get(ticketId, hash);
+    }
+
+    ParkingTicket put(long ticketId, ParkingTicket ticket) {
+        if (ticketId == EMPTY) {
+            throw new IllegalArgumentException("Ticket id must not be 0");
+        }
+        long hash = hash(ticketId);
+        return segmentFor(hash).put(ticketId, hash, ticket);
+    }
+
+    /**
+     * Removes the entry only if it still maps to the given ticket.
+     */
+    boolean remove(long ticketId, ParkingTicket ticket) {
+        long hash = hash(ticketId);
+        return segmentFor(hash).remove(ticketId, hash, ticket);
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Visits every active ticket, one segment at a time. Tickets added or
+     * removed concurrently in other segments may or may not be seen.
+     */
+    void forEach(Consumer<ParkingTicket> action) {
+        for (Segment segment : segments) {
+            segment.forEach(action);
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    // Ticket ids are sequential in their low bits, so spread them first.
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final class Segment {
+        private long[] keys;
+        private ParkingTicket[] values;
+        private int size;
+
+        Segment() {
+            this.keys = new long[INITIAL_SEGMENT_CAPACITY];
+            this.values = new ParkingTicket[INITIAL_SEGMENT_CAPACITY];
+        }
+
+        synchronized ParkingTicket get(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        synchronized ParkingTicket put(long key, long hash, ParkingTicket value) {
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    ParkingTicket previous = values[i];
+                    values[i] = value;
+                    return previous;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 4 > keys.length * 3) {
+                resize();
+            }
+            return null;
+        }
+
+        synchronized boolean remove(long key, long hash, ParkingTicket value) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    if (values[i] != value) {
+                        return false;
+                    }
+                    deleteAt(i);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void forEach(Consumer<ParkingTicket> action) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    action.accept(values[i]);
+                }
+            }
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones.
+        private void deleteAt(int slot) {
+            int mask = keys.length - 1;
+            int gap = slot;
+            for (int i = (slot + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+                int home = (int) hash(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = EMPTY;
+            values[gap] = null;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            ParkingTicket[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new ParkingTicket[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != EMPTY) {
+                    int i = (int) hash(oldKeys[j]) & mask;
+                    while (keys[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package parkinglot;
+
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the heap taken per active ticket by the {@link TicketIndex}
+ * against the {@code HashMap<String, ParkingTicket>} keyed by ticket number
+ * that the lot used before, at 10k, 100k and 1M tickets. The tickets are
+ * created up front and shared, so neither figure includes them; the
+ * HashMap figure does include its rendered String keys, which the lot had
+ * to hold. Every ticket is then looked up and removed from the index.
+ *
+ * Run with {@code java -XX:+UseSerialGC -cp out parkinglot.TicketIndexFootprint};
+ * exits with status 1 if the index loses a ticket.
+ */
+public class TicketIndexFootprint {
+    public static void main(String[] args) throws InterruptedException {
+        boolean ok = true;
+        for (int count : new int[] {10_000, 100_000, 1_000_000}) {
+            TicketIdGenerator ids = new TicketIdGenerator(0);
+            ParkingTicket[] tickets = new ParkingTicket[count];
+            for (int i = 0; i < count; i++) {
+                tickets[i] = new ParkingTicket();
+                tickets[i].setTicketId(ids.nextId());
+            }
+
+            long before = usedHeap();
+            Map<String, ParkingTicket> map = new HashMap<>();
+            for (ParkingTicket ticket : tickets) {
+                map.put(ticket.getTicketNumber(), ticket);
+            }
+            long mapBytes = usedHeap() - before;
+            // Compiled code may otherwise treat a structure as dead before it is measured.
+            Reference.reachabilityFence(map);
+            map = null;
+
+            before = usedHeap();
+            TicketIndex index = new TicketIndex();
+            for (ParkingTicket ticket : tickets) {
+                index.put(ticket.getTicketId(), ticket);
+            }
+            long indexBytes = usedHeap() - before;
+            Reference.reachabilityFence(index);
+
+            int found = 0;
+            for (ParkingTicket ticket : tickets) {
+                if (index.get(ticket.getTicketId()) == ticket && index.remove(ticket.getTicketId(), ticket)) {
+                    found++;
+                }
+            }
+            System.out.printf("%,9d tickets: HashMap<String, ParkingTicket> %5.1f B/ticket, TicketIndex %5.1f B/ticket; "
+                            + "found and removed %,d, left %d%n",
+                    count, (double) mapBytes / count, (double) indexBytes / count, found, index.size());
+            ok &= found == count && index.size() == 0;
+        }
+        if (!ok) {
+            System.out.println("FAILED: the index lost a ticket");
+            System.exit(1);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,383 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Matches ride requests to drivers in windows instead of one at a time.
+// Each window, every ride looks up its nearest available drivers as
+// candidates (in parallel per city cell); rides that share a candidate end
+// up in the same group, and each group is solved in parallel by an auction
+// that places as many rides as possible with the least total pickup
+// distance. Winners are confirmed with Driver.acceptRide; a ride left
+// without a driver waits for the next window. Every submitted ride's future
+// completes, with null if no driver was found or the matcher shut down.
+public class BatchMatcher {
+  private static final double CELL_DEGREES = 0.05; // ~5 km
+  // Rides get this many candidate drivers; in a cell with fewer distinct
+  // candidates than rides, they pick from a shared pool of as many drivers
+  // as the cell has rides, up to MAX_CANDIDATES.
+  private static final int CANDIDATES = 8;
+  private static final int MAX_CANDIDATES = 1024;
+  // A ride is left for the next window rather than sent a driver further
+  // away than this.
+  private static final double MAX_PICKUP_KM = 5;
+  // What leaving a ride unmatched costs in the auction; above any pickup
+  // distance, so the auction places as many rides as it can first.
+  private static final double UNMATCHED_COST_KM = 2 * MAX_PICKUP_KM;
+  // Bid increment; the total pickup distance ends within rides * 10 m of
+  // the optimum for the candidates considered.
+  private static final double EPSILON_KM = 0.01;
+  private static final int MAX_WINDOWS = 5;
+
+  private final DriverIndex driverIndex;
+  private final long windowMillis;
+  private final Queue<PendingRide> pending;
+  private final ScheduledExecutorService ticker;
+  private final ExecutorService workers;
+  private List<PendingRide> carriedOver; // touched by the ticker thread only
+  private volatile boolean closed;
+
+  public BatchMatcher(DriverIndex driverIndex, long windowMillis, int workerCount) {
+    this.driverIndex = driverIndex;
+    this.windowMillis = windowMillis;
+    this.pending = new ConcurrentLinkedQueue<>();
+    this.ticker = Executors.newSingleThreadScheduledExecutor(task -> daemon(task, "batch-matcher-ticker"));
+    this.workers = Executors.newFixedThreadPool(workerCount, task -> daemon(task, "batch-matcher-worker"));
+    this.carriedOver = new ArrayList<>();
+  }
+
+  public void start() {
+    ticker.scheduleAtFixedRate(this::matchWindow, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // Rides still waiting complete with null. A window in progress finishes
+  // first; the ticker then completes the rides and stops.
+  public synchronized void shutdown() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    ticker.execute(this::close);
+    ticker.shutdown();
+  }
+
+  // Completes with the assigned driver, or null if none was found within
+  // MAX_WINDOWS windows or the matcher was shut down.
+  public CompletableFuture<Driver> submit(Ride ride) {
+    PendingRide request = new PendingRide(ride);
+    pending.add(request);
+    // Either close() sees the ride in the queue or we see closed here.
+    if (closed) {
+      abandonPending();
+    }
+    return request.future;
+  }
+
+  void matchWindow() {
+    if (closed) {
+      return;
+    }
+    List<PendingRide> batch = carriedOver;
+    carriedOver = new ArrayList<>();
+    PendingRide request;
+    while ((request = pending.poll()) != null) {
+      batch.add(request);
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    // An exception escaping to the ticker would cancel all later windows,
+    // so a failed window is logged and its rides are tried again.
+    try {
+      match(batch);
+    } catch (RuntimeException e) {
+      System.err.println("Batch matching window failed: " + e);
+      carriedOver = new ArrayList<>();
+      for (PendingRide ride : batch) {
+        if (!ride.future.isDone()) {
+          carryOver(ride);
+        }
+      }
+    }
+  }
+
+  private void match(List<PendingRide> batch) {
+    Map<Long, List<PendingRide>> cells = new HashMap<>();
+    for (PendingRide ride : batch) {
+      Location pickup = ride.ride.getPickup();
+      long cell = ((long) Math.floor(pickup.getLatitude() / CELL_DEGREES) << 32)
+          | ((long) Math.floor(pickup.getLongitude() / CELL_DEGREES) & 0xffffffffL);
+      cells.computeIfAbsent(cell, c -> new ArrayList<>()).add(ride);
+    }
+    List<Callable<List<PendingRide>>> lookups = new ArrayList<>();
+    for (List<PendingRide> cell : cells.values()) {
+      lookups.add(() -> {
+        findCandidates(cell);
+        return cell;
+      });
+    }
+    List<Callable<List<PendingRide>>> groups = new ArrayList<>();
+    for (List<PendingRide> group : groupBySharedCandidates(run(lookups), batch)) {
+      groups.add(() -> matchGroup(group));
+    }
+    // Rides the auction could not place, as their candidates were all
+    // taken, get the nearest driver left, as they would on the greedy path.
+    // This runs here, once every group has confirmed its winners, so a
+    // fallback never takes a driver another group was about to win.
+    for (List<PendingRide> unmatched : run(groups)) {
+      for (PendingRide ride : unmatched) {
+        Driver driver = nearestFreeDriver(ride.ride);
+        if (driver != null) {
+          ride.future.complete(driver);
+        } else {
+          carryOver(ride);
+        }
+      }
+    }
+  }
+
+  private void carryOver(PendingRide ride) {
+    if (++ride.windows >= MAX_WINDOWS) {
+      ride.future.complete(null);
+    } else {
+      carriedOver.add(ride);
+    }
+  }
+
+  // Runs on the ticker after the last window.
+  private void close() {
+    workers.shutdown();
+    for (PendingRide ride : carriedOver) {
+      ride.future.complete(null);
+    }
+    carriedOver = new ArrayList<>();
+    abandonPending();
+  }
+
+  private void abandonPending() {
+    PendingRide request;
+    while ((request = pending.poll()) != null) {
+      request.future.complete(null);
+    }
+  }
+
+  private static Thread daemon(Runnable task, String name) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  private <T> List<T> run(List<Callable<T>> tasks) {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      for (Future<T> future : workers.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    return results;
+  }
+
+  private void findCandidates(List<PendingRide> rides) {
+    Set<Driver> distinct = new HashSet<>();
+    for (PendingRide request : rides) {
+      Ride ride = request.ride;
+      setCandidates(request, driverIndex.findNearest(ride.getPickup(), ride.getType(),
+          DriverStatus.AVAILABLE, CANDIDATES));
+      distinct.addAll(request.candidates);
+    }
+    if (distinct.size() >= rides.size()) {
+      return;
+    }
+    // A crowded cell: its rides share one larger pool of drivers around the
+    // cell, looked up once instead of once per ride.
+    Location pickup = rides.get(0).ride.getPickup();
+    Location center = new Location((Math.floor(pickup.getLatitude() / CELL_DEGREES) + 0.5) * CELL_DEGREES,
+        (Math.floor(pickup.getLongitude() / CELL_DEGREES) + 0.5) * CELL_DEGREES);
+    int poolSize = Math.min(MAX_CANDIDATES, rides.size() + CANDIDATES);
+    Map<RideType, List<Driver>> pools = new EnumMap<>(RideType.class);
+    for (PendingRide request : rides) {
+      setCandidates(request, pools.computeIfAbsent(request.ride.getType(),
+          type -> driverIndex.findNearest(center, type, DriverStatus.AVAILABLE, poolSize)));
+    }
+  }
+
+  private static void setCandidates(PendingRide request, List<Driver> drivers) {
+    Location pickup = request.ride.getPickup();
+    request.candidates = new ArrayList<>();
+    request.distances = new double[drivers.size()];
+    for (Driver driver : drivers) {
+      Location location = driver.getCurrentLocation();
+      if (location.approximateDistanceTo(pickup) > MAX_PICKUP_KM * 1.01) {
+        continue;
+      }
+      double distance = location.distanceTo(pickup);
+      if (distance <= MAX_PICKUP_KM) {
+        request.distances[request.candidates.size()] = distance;
+        request.candidates.add(driver);
+      }
+    }
+  }
+
+  // Splits the rides into groups that share no candidate driver, so the
+  // groups can be matched independently.
+  private static List<List<PendingRide>> groupBySharedCandidates(List<List<PendingRide>> cells,
+      List<PendingRide> batch) {
+    int[] parent = new int[batch.size()];
+    Map<PendingRide, Integer> ids = new HashMap<>();
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+      ids.put(batch.get(i), i);
+    }
+    Map<Driver, Integer> firstRide = new HashMap<>();
+    for (List<PendingRide> cell : cells) {
+      for (PendingRide ride : cell) {
+        int id = ids.get(ride);
+        for (Driver driver : ride.candidates) {
+          Integer other = firstRide.putIfAbsent(driver, id);
+          if (other != null) {
+            parent[find(parent, id)] = find(parent, other);
+          }
+        }
+      }
+    }
+    Map<Integer, List<PendingRide>> groups = new HashMap<>();
+    for (int i = 0; i < parent.length; i++) {
+      groups.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(batch.get(i));
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  // Returns the rides of the group the auction left without a driver.
+  private List<PendingRide> matchGroup(List<PendingRide> rides) {
+    int n = rides.size();
+    Map<Driver, Integer> driverIds = new HashMap<>();
+    List<Driver> drivers = new ArrayList<>();
+    int[][] candidates = new int[n][];
+    double[][] benefits = new double[n][];
+    for (int r = 0; r < n; r++) {
+      PendingRide ride = rides.get(r);
+      candidates[r] = new int[ride.candidates.size()];
+      benefits[r] = new double[ride.candidates.size()];
+      for (int c = 0; c < candidates[r].length; c++) {
+        Driver driver = ride.candidates.get(c);
+        Integer id = driverIds.get(driver);
+        if (id == null) {
+          id = drivers.size();
+          driverIds.put(driver, id);
+          drivers.add(driver);
+        }
+        candidates[r][c] = id;
+        benefits[r][c] = -ride.distances[c];
+      }
+    }
+    int[] assignment = auction(candidates, benefits, drivers.size());
+    List<PendingRide> unmatched = new ArrayList<>();
+    for (int r = 0; r < n; r++) {
+      PendingRide request = rides.get(r);
+      Driver driver = assignment[r] < 0 ? null : drivers.get(assignment[r]);
+      // The driver may have gone offline or taken a ride since the lookup.
+      if (driver != null && driver.acceptRide(request.ride)) {
+        request.future.complete(driver);
+      } else {
+        unmatched.add(request);
+      }
+    }
+    return unmatched;
+  }
+
+  private Driver nearestFreeDriver(Ride ride) {
+    for (Driver driver : driverIndex.findNearest(ride.getPickup(), ride.getType(), DriverStatus.AVAILABLE, 2)) {
+      if (driver.getCurrentLocation().distanceTo(ride.getPickup()) <= MAX_PICKUP_KM
+          && driver.acceptRide(ride)) {
+        return driver;
+      }
+    }
+    return null;
+  }
+
+  // Forward auction (Bertsekas) for a sparse assignment: rides bid for
+  // their candidate drivers, raising a driver's price by how much more they
+  // value it than their next best option. Every ride may also stay
+  // unmatched at a benefit of -UNMATCHED_COST_KM, which no one else competes
+  // for, so the auction ends even when drivers are scarce. Returns the
+  // driver per ride, or -1.
+  static int[] auction(int[][] candidates, double[][] benefits, int driverCount) {
+    int n = candidates.length;
+    int[] assignment = new int[n];
+    int[] owner = new int[driverCount];
+    double[] price = new double[driverCount];
+    Arrays.fill(assignment, -1);
+    Arrays.fill(owner, -1);
+    Queue<Integer> bidders = new ArrayDeque<>();
+    for (int r = 0; r < n; r++) {
+      bidders.add(r);
+    }
+    while (!bidders.isEmpty()) {
+      int r = bidders.poll();
+      int best = -1;
+      double bestValue = -UNMATCHED_COST_KM;
+      double secondValue = -UNMATCHED_COST_KM;
+      for (int c = 0; c < candidates[r].length; c++) {
+        double value = benefits[r][c] - price[candidates[r][c]];
+        if (value > bestValue) {
+          secondValue = bestValue;
+          bestValue = value;
+          best = candidates[r][c];
+        } else if (value > secondValue) {
+          secondValue = value;
+        }
+      }
+      if (best < 0) {
+        continue; // staying unmatched is the best option
+      }
+      price[best] += bestValue - secondValue + EPSILON_KM;
+      if (owner[best] >= 0) {
+        assignment[owner[best]] = -1;
+        bidders.add(owner[best]);
+      }
+      owner[best] = r;
+      assignment[r] = best;
+    }
+    return assignment;
+  }
+
+  static class PendingRide {
+    private final Ride ride;
+    private final CompletableFuture<Driver> future;
+    private List<Driver> candidates;
+    private double[] distances;
+    private int windows;
+
+    PendingRide(Ride ride) {
+      this.ride = ride;
+      this.future = new CompletableFuture<>();
+    }
+  }
+}
@@ -1,36 +1,130 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class Driver extends User {
+  private static final DriverStatus[] STATUSES = DriverStatus.values();
+
   private Vehicle vehicle;
-  private Location currentLocation;
-  private DriverStatus status;
+  // Written by the ingestion thread, read by dispatch threads.
+  private volatile Location currentLocation;
+  // Status and current ride number, packed as (ride number << 8) | status
+  // so that both change in one CAS. Only one ride can win a driver.
+  private final AtomicLong state;
   private List<Ride> rideHistory;
+  private DriverIndex index;
+  // Called with the ride whenever an offer to this driver lapses, by
+  // whichever path noticed it, so the ride can be offered to someone else.
+  private volatile Consumer<Ride> offerExpiredHandler;
 
   public Driver(String id, String name, String email, String phone, Vehicle vehicle) {
     super(id, name, email, phone);
     this.vehicle = vehicle;
-    this.status = DriverStatus.OFFLINE;
+    this.state = new AtomicLong(pack(DriverStatus.OFFLINE, 0));
     this.rideHistory = new ArrayList<>();
   }
 
   public void updateLocation(Location location) {
     this.currentLocation = location;
+    reindex();
   }
 
+  // Going online or offline; drops any ride the driver had.
   public void setStatus(DriverStatus status) {
-    this.status = status;
+    state.set(pack(status, 0));
+    reindex();
+  }
+
+  // Holds an available driver for the ride until the driver accepts or
+  // declines, or the offer times out.
+  public boolean offer(Ride ride, long timeoutMillis) {
+    // Once offered, a ride can no longer be taken without an offer.
+    ride.setOfferExpiresAt(System.currentTimeMillis() + timeoutMillis);
+    if (!state.compareAndSet(pack(DriverStatus.AVAILABLE, 0), pack(DriverStatus.OFFERED, ride.getNumber()))) {
+      return false;
+    }
+    ride.setOfferedTo(this);
+    reindex();
+    return true;
+  }
+
+  public boolean declineRide(Ride ride) {
+    if (!release(ride, DriverStatus.OFFERED)) {
+      return false;
+    }
+    ride.addDeclinedBy(this);
+    return true;
+  }
+
+  // Returns the driver to AVAILABLE if the ride's offer is still pending;
+  // false if it was accepted, declined or expired first. A lapsed offer
+  // counts as a decline, and the expired-offer handler is told.
+  public boolean expireOffer(Ride ride) {
+    if (!release(ride, DriverStatus.OFFERED)) {
+      return false;
+    }
+    ride.addDeclinedBy(this);
+    Consumer<Ride> handler = offerExpiredHandler;
+    if (handler != null) {
+      handler.accept(ride);
+    }
+    return true;
+  }
+
+  // Frees the driver from a ride that was cancelled, offered or accepted.
+  public boolean releaseRide(Ride ride) {
+    return release(ride, DriverStatus.OFFERED) || release(ride, DriverStatus.BUSY);
+  }
+
+  // For moves the caller knows stay within the driver's index cell.
+  void moveWithinCell(Location location) {
+    this.currentLocation = location;
   }
 
+  // Keeps the driver's cell in the dispatch index in step with its state.
+  void setIndex(DriverIndex index) {
+    this.index = index;
+    reindex();
+  }
+
+  void setOfferExpiredHandler(Consumer<Ride> offerExpiredHandler) {
+    this.offerExpiredHandler = offerExpiredHandler;
+  }
+
+  private void reindex() {
+    if (index != null) {
+      index.update(this);
+    }
+  }
+
+  // Accepts a ride offered to this driver before the offer expired, or a
+  // ride that was never offered (as with batch matching) while available.
   public boolean acceptRide(Ride ride) {
-    if (this.status == DriverStatus.AVAILABLE) {
-      ride.setDriver(this);
-      ride.setStatus(RideStatus.ACCEPTED);
-      this.status = DriverStatus.BUSY;
-      this.rideHistory.add(ride);
-      return true;
+    long current = state.get();
+    if (current == pack(DriverStatus.OFFERED, ride.getNumber())) {
+      if (System.currentTimeMillis() > ride.getOfferExpiresAt()) {
+        expireOffer(ride);
+        return false;
+      }
+    } else if (current != pack(DriverStatus.AVAILABLE, 0) || ride.getOfferExpiresAt() != 0) {
+      return false;
+    }
+    long busy = pack(DriverStatus.BUSY, ride.getNumber());
+    if (!state.compareAndSet(current, busy)) {
+      return false;
     }
-    return false;
+    ride.cancelOfferTimeout();
+    if (!ride.assignDriver(this)) {
+      // Another driver won the ride first, or it was cancelled.
+      state.compareAndSet(busy, pack(DriverStatus.AVAILABLE, 0));
+      reindex();
+      return false;
+    }
+    // Only the driver's current ride reaches this point.
+    this.rideHistory.add(ride);
+    reindex();
+    return true;
   }
 
   public void startRide(Ride ride) {
@@ -39,16 +133,32 @@ public class Driver extends User {
 
   public void completeRide(Ride ride) {
     ride.setStatus(RideStatus.COMPLETED);
-    this.status = DriverStatus.AVAILABLE;
+    release(ride, DriverStatus.BUSY);
   }
 
   public void rateRider(Rider rider, double rating) {
     rider.updateRating(rating);
   }
 
+  private boolean release(Ride ride, DriverStatus from) {
+    if (!state.compareAndSet(pack(from, ride.getNumber()), pack(DriverStatus.AVAILABLE, 0))) {
+      return false;
+    }
+    if (from == DriverStatus.OFFERED) {
+      ride.cancelOfferTimeout();
+    }
+    reindex();
+    return true;
+  }
+
+  private static long pack(DriverStatus status, long rideNumber) {
+    return rideNumber << 8 | status.ordinal();
+  }
+
   // Getters
   public Vehicle getVehicle() { return vehicle; }
   public Location getCurrentLocation() { return currentLocation; }
-  public DriverStatus getStatus() { return status; }
+  public DriverStatus getStatus() { return STATUSES[(int) (state.get() & 0xff)]; }
+  public long getCurrentRideNumber() { return state.get() >>> 8; }
   public List<Ride> getRideHistory() { return rideHistory; }
 }
@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Grid index of drivers by status and ride type. The earth is cut into
+// square cells of cellDegrees; a k-nearest search visits rings of cells
+// around the pickup and stops once no unvisited cell can hold a closer driver.
+// Candidates are ranked by Location.approximateDistanceTo; only the final
+// few are re-ranked by the exact distance. Cells do not wrap around the
+// antimeridian.
+public class DriverIndex {
+  private static final double EARTH_RADIUS_KM = 6371;
+  private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+  // Candidates kept beyond k for the exact re-rank, and the relative error
+  // allowed for the approximate distance when proving a search complete.
+  private static final int RERANK_EXTRA = 3;
+  private static final double APPROXIMATION_ERROR = 0.002;
+
+  private final double cellDegrees;
+  private final Grid[][] grids; // [status][ride type]
+  private final Map<String, Placement> placements;
+
+  public DriverIndex() {
+    this(0.005); // ~550 m
+  }
+
+  public DriverIndex(double cellDegrees) {
+    this.cellDegrees = cellDegrees;
+    this.grids = new Grid[DriverStatus.values().length][RideType.values().length];
+    for (Grid[] byType : grids) {
+      for (int i = 0; i < byType.length; i++) {
+        byType[i] = new Grid();
+      }
+    }
+    this.placements = new ConcurrentHashMap<>();
+  }
+
+  // Moves the driver to the cell of its current location, status and ride
+  // type. Drivers without a location are removed from the index.
+  public void update(Driver driver) {
+    // A concurrent update may commit a placement read from older state after
+    // this one checked, so every updater re-checks after its own change; the
+    // last one to finish leaves the index matching the driver.
+    while (!isPlaced(driver)) {
+      placements.compute(driver.getId(), (id, old) -> {
+        Location latest = driver.getCurrentLocation();
+        Placement now = latest == null ? null : new Placement(driver.getStatus(),
+            driver.getVehicle().getType(), cellOf(latest.getLatitude(), latest.getLongitude()));
+        if (old != null && old.equals(now)) {
+          return old;
+        }
+        if (old != null) {
+          grids[old.status.ordinal()][old.type.ordinal()].remove(old.cell, driver);
+        }
+        if (now != null) {
+          grids[now.status.ordinal()][now.type.ordinal()].add(now.cell, driver);
+        }
+        return now;
+      });
+    }
+  }
+
+  // Most pings keep a driver in its cell; this checks that without locking.
+  private boolean isPlaced(Driver driver) {
+    Location location = driver.getCurrentLocation();
+    Placement current = placements.get(driver.getId());
+    if (location == null || current == null) {
+      return location == null && current == null;
+    }
+    return current.status == driver.getStatus() && current.type == driver.getVehicle().getType()
+        && current.cell == cellOf(location.getLatitude(), location.getLongitude());
+  }
+
+  public void remove(Driver driver) {
+    placements.computeIfPresent(driver.getId(), (id, old) -> {
+      grids[old.status.ordinal()][old.type.ordinal()].remove(old.cell, driver);
+      return null;
+    });
+  }
+
+  boolean isSameCell(Location location, double lat, double lon) {
+    return location != null
+        && cellOf(location.getLatitude(), location.getLongitude()) == cellOf(lat, lon);
+  }
+
+  public int size(DriverStatus status, RideType type) {
+    return grids[status.ordinal()][type.ordinal()].size.get();
+  }
+
+  // Drivers of any ride type with the status in the box from (south, west)
+  // to (north, east), counted per grid cell; the box edges are rounded out
+  // to whole cells.
+  public int count(DriverStatus status, double south, double west, double north, double east) {
+    int fromLat = (int) Math.floor(south / cellDegrees + 1e-9);
+    int toLat = (int) Math.ceil(north / cellDegrees - 1e-9) - 1;
+    int fromLon = (int) Math.floor(west / cellDegrees + 1e-9);
+    int toLon = (int) Math.ceil(east / cellDegrees - 1e-9) - 1;
+    int count = 0;
+    for (Grid grid : grids[status.ordinal()]) {
+      for (int latCell = fromLat; latCell <= toLat; latCell++) {
+        for (int lonCell = fromLon; lonCell <= toLon; lonCell++) {
+          Set<Driver> cell = grid.cells.get(key(latCell, lonCell));
+          if (cell != null) {
+            count += cell.size();
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  // Up to k drivers with the status and ride type, nearest first.
+  public List<Driver> findNearest(Location pickup, RideType type, DriverStatus status, int k) {
+    Grid grid = grids[status.ordinal()][type.ordinal()];
+    if (k <= 0 || grid.size.get() == 0) {
+      return Collections.emptyList();
+    }
+    // Max-heap of the best candidates found so far, farthest on top.
+    int keep = k + RERANK_EXTRA;
+    PriorityQueue<Candidate> best = new PriorityQueue<>(keep + 1,
+        Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+    double lat = pickup.getLatitude();
+    double lon = pickup.getLongitude();
+    int centerLat = (int) Math.floor(lat / cellDegrees);
+    int centerLon = (int) Math.floor(lon / cellDegrees);
+    int visited = 0;
+    int probed = 0;
+    // Once a search has probed as many cells as the grid holds, scanning
+    // the grid directly is cheaper than growing the rings any further.
+    for (int ring = 0; probed < grid.cells.size(); ring++) {
+      for (int dLat = -ring; dLat <= ring; dLat++) {
+        // Inner rows of the ring only have their two end cells.
+        int step = Math.abs(dLat) == ring ? 1 : 2 * ring;
+        for (int dLon = -ring; dLon <= ring; dLon += step) {
+          probed++;
+          visited += collect(grid.cells.get(key(centerLat + dLat, centerLon + dLon)),
+              pickup, type, status, keep, best);
+        }
+      }
+      if (visited >= grid.size.get() || best.size() == keep
+          && best.peek().distance * (1 + APPROXIMATION_ERROR) <= distanceOutside(lat, lon, centerLat, centerLon, ring)) {
+        return nearestExact(best, pickup, k);
+      }
+    }
+    // Sparse or polar areas.
+    best.clear();
+    for (Set<Driver> cell : grid.cells.values()) {
+      collect(cell, pickup, type, status, keep, best);
+    }
+    return nearestExact(best, pickup, k);
+  }
+
+  private static int collect(Set<Driver> cell, Location pickup, RideType type, DriverStatus status,
+      int k, PriorityQueue<Candidate> best) {
+    if (cell == null) {
+      return 0;
+    }
+    int count = 0;
+    for (Driver driver : cell) {
+      count++;
+      Location location = driver.getCurrentLocation();
+      // The cell may be a step behind a driver that just changed state.
+      if (location == null || driver.getStatus() != status || driver.getVehicle().getType() != type) {
+        continue;
+      }
+      double distance = location.approximateDistanceTo(pickup);
+      if (best.size() < k) {
+        best.add(new Candidate(driver, distance));
+      } else if (distance < best.peek().distance) {
+        best.poll();
+        best.add(new Candidate(driver, distance));
+      }
+    }
+    return count;
+  }
+
+  // Lower bound in km on the distance from (lat, lon) to any point outside
+  // the square of cells within `ring` of the center cell.
+  private double distanceOutside(double lat, double lon, int centerLat, int centerLon, int ring) {
+    double south = (centerLat - ring) * cellDegrees;
+    double north = (centerLat + ring + 1) * cellDegrees;
+    double west = (centerLon - ring) * cellDegrees;
+    double east = (centerLon + ring + 1) * cellDegrees;
+    double latKm = Math.min(lat - south, north - lat) * KM_PER_DEGREE;
+    // Within the covered latitudes, meridians are closest together at the
+    // most poleward one, which bounds the east-west distance from below.
+    double maxAbsLat = Math.min(90, Math.max(Math.abs(south), Math.abs(north)));
+    double halfLon = Math.toRadians(Math.min(lon - west, east - lon)) / 2;
+    double lonKm = 2 * EARTH_RADIUS_KM
+        * Math.asin(Math.min(1, Math.cos(Math.toRadians(maxAbsLat)) * Math.sin(halfLon)));
+    return Math.min(latKm, lonKm);
+  }
+
+  private static List<Driver> nearestExact(PriorityQueue<Candidate> best, Location pickup, int k) {
+    List<Candidate> candidates = new ArrayList<>(best.size());
+    for (Candidate candidate : best) {
+      candidates.add(new Candidate(candidate.driver,
+          candidate.driver.getCurrentLocation().distanceTo(pickup)));
+    }
+    candidates.sort(Comparator.comparingDouble(c -> c.distance));
+    List<Driver> drivers = new ArrayList<>(Math.min(k, candidates.size()));
+    for (int i = 0; i < k && i < candidates.size(); i++) {
+      drivers.add(candidates.get(i).driver);
+    }
+    return drivers;
+  }
+
+  private long cellOf(double lat, double lon) {
+    return key((int) Math.floor(lat / cellDegrees), (int) Math.floor(lon / cellDegrees));
+  }
+
+  private static long key(int latCell, int lonCell) {
+    return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+  }
+
+  private static class Grid {
+    private final Map<Long, Set<Driver>> cells = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    void add(long cell, Driver driver) {
+      cells.computeIfAbsent(cell, c -> ConcurrentHashMap.newKeySet()).add(driver);
+      size.incrementAndGet();
+    }
+
+    void remove(long cell, Driver driver) {
+      Set<Driver> drivers = cells.get(cell);
+      if (drivers != null && drivers.remove(driver)) {
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  private static class Placement {
+    private final DriverStatus status;
+    private final RideType type;
+    private final long cell;
+
+    Placement(DriverStatus status, RideType type, long cell) {
+      this.status = status;
+      this.type = type;
+      this.cell = cell;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Placement)) {
+        return false;
+      }
+      Placement other = (Placement) o;
+      return status == other.status && type == other.type && cell == other.cell;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(cell) * 31 + status.hashCode() * 7 + type.hashCode();
+    }
+  }
+
+  private static class Candidate {
+    private final Driver driver;
+    private final double distance;
+
+    Candidate(Driver driver, double distance) {
+      this.driver = driver;
+      this.distance = distance;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 public enum DriverStatus {
   AVAILABLE,
+  OFFERED,
   BUSY,
   OFFLINE
 }
@@ -1,10 +1,19 @@
 public class Location {
-  private double latitude;
-  private double longitude;
+  private static final int R = 6371; // Radius of the earth in km
+
+  private final double latitude;
+  private final double longitude;
+  // Radians and cos(latitude) are computed once, not per distance call.
+  private final double latRad;
+  private final double lonRad;
+  private final double cosLat;
 
   public Location(double latitude, double longitude) {
     this.latitude = latitude;
     this.longitude = longitude;
+    this.latRad = Math.toRadians(latitude);
+    this.lonRad = Math.toRadians(longitude);
+    this.cosLat = Math.cos(latRad);
   }
 
   public double getLatitude() {
@@ -17,17 +26,20 @@ public class Location {
 
   // Calculate distance between two locations using Haversine formula
   public double distanceTo(Location other) {
-    final int R = 6371; // Radius of the earth in km
-
-    double latDistance = Math.toRadians(other.latitude - this.latitude);
-    double lonDistance = Math.toRadians(other.longitude - this.longitude);
-    
-    double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-        + Math.cos(Math.toRadians(this.latitude)) * Math.cos(Math.toRadians(other.latitude))
-        * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-    
-    double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-    
-    return R * c; // Distance in km
+    double sinLat = Math.sin((other.latRad - this.latRad) / 2);
+    double sinLon = Math.sin((other.lonRad - this.lonRad) / 2);
+
+    double a = sinLat * sinLat + this.cosLat * other.cosLat * sinLon * sinLon;
+
+    return 2 * R * Math.asin(Math.min(1, Math.sqrt(a))); // Distance in km
+  }
+
+  // Equirectangular approximation with no trigonometry, for ranking
+  // candidates. Within a metro area it stays within 0.1% of distanceTo;
+  // use distanceTo for the distances that are reported or billed.
+  public double approximateDistanceTo(Location other) {
+    double x = (other.lonRad - this.lonRad) * (this.cosLat + other.cosLat) / 2;
+    double y = other.latRad - this.latRad;
+    return R * Math.sqrt(x * x + y * y);
   }
 }
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Applies GPS pings to drivers in bulk. Pings arrive as packed primitive
+// records in a PingBatch; within a batch only the newest ping per driver is
+// applied, and pings older than the last one applied for a driver are
+// dropped. Batches are applied by one thread at a time, so per-driver order
+// holds; readers see each position through the driver's volatile field.
+// The driver index is only touched for pings that cross a cell boundary.
+public class LocationIngestor {
+  private Driver[] drivers = new Driver[1024];
+  private long[] lastPingMillis = new long[1024];
+  private int[] latestInBatch = new int[1024];
+  private int[] touched = new int[1024];
+  private int driverCount;
+  private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+  private final LongAdder applied = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final DriverIndex index;
+
+  public LocationIngestor(DriverIndex index) {
+    this.index = index;
+  }
+
+  // Returns the slot pings for this driver are addressed to.
+  public synchronized int register(Driver driver) {
+    Integer existing = slots.get(driver.getId());
+    if (existing != null) {
+      return existing;
+    }
+    if (driverCount == drivers.length) {
+      int capacity = drivers.length * 2;
+      drivers = Arrays.copyOf(drivers, capacity);
+      lastPingMillis = Arrays.copyOf(lastPingMillis, capacity);
+      latestInBatch = Arrays.copyOf(latestInBatch, capacity);
+    }
+    drivers[driverCount] = driver;
+    lastPingMillis[driverCount] = Long.MIN_VALUE;
+    latestInBatch[driverCount] = -1;
+    slots.put(driver.getId(), driverCount);
+    return driverCount++;
+  }
+
+  // Gateways resolve a driver's slot once per connection, not per ping.
+  public int slotOf(String driverId) {
+    Integer slot = slots.get(driverId);
+    return slot == null ? -1 : slot;
+  }
+
+  // Returns the number of drivers whose position changed.
+  public synchronized int apply(PingBatch batch) {
+    if (touched.length < batch.size()) {
+      touched = new int[batch.size()];
+    }
+    int touchedCount = 0;
+    int stale = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      int slot = batch.slots[i];
+      long time = batch.times[i];
+      if (slot < 0 || slot >= driverCount || time <= lastPingMillis[slot]) {
+        stale++;
+        continue;
+      }
+      lastPingMillis[slot] = time;
+      if (latestInBatch[slot] < 0) {
+        touched[touchedCount++] = slot;
+      }
+      latestInBatch[slot] = i;
+    }
+    for (int t = 0; t < touchedCount; t++) {
+      int slot = touched[t];
+      int i = latestInBatch[slot];
+      latestInBatch[slot] = -1;
+      Driver driver = drivers[slot];
+      double lat = batch.latitudes[i];
+      double lon = batch.longitudes[i];
+      // Most pings stay within a cell, which needs no index update.
+      if (index.isSameCell(driver.getCurrentLocation(), lat, lon)) {
+        driver.moveWithinCell(new Location(lat, lon));
+      } else {
+        driver.updateLocation(new Location(lat, lon));
+      }
+    }
+    applied.add(touchedCount);
+    dropped.add(stale);
+    return touchedCount;
+  }
+
+  public long getAppliedCount() { return applied.sum(); }
+  public long getDroppedCount() { return dropped.sum(); }
+}
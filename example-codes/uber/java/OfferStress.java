@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Stress test for ride offers and acceptance.
+//   drivers   16 threads offer, accept, decline, expire, complete and release
+//             20,000 rides across 200 drivers at random; no ride may be won
+//             twice and no driver may hold two rides
+//   lapses    an offer expired by a late acceptRide racing the offer timer
+//             is handed on exactly once, and a ride whose offers keep
+//             lapsing is never offered to the same driver twice
+//   requests  16 threads make 8,000 ride requests through UberSystem against
+//             300 drivers, accepting, declining or letting each offer lapse;
+//             every answered offer's timer must be cancelled
+// Run with java -cp out OfferStress; exits with status 1 on any violation.
+public class OfferStress {
+  private static final int THREADS = 16;
+
+  private static boolean failed;
+
+  public static void main(String[] args) throws InterruptedException {
+    racingDrivers();
+    lapsedOffers();
+    concurrentRequests();
+    if (failed) {
+      System.exit(1);
+    }
+  }
+
+  private static void racingDrivers() throws InterruptedException {
+    int driverCount = 200;
+    int rideCount = 20_000;
+    DriverIndex index = new DriverIndex();
+    Driver[] drivers = new Driver[driverCount];
+    for (int i = 0; i < driverCount; i++) {
+      drivers[i] = newDriver("d" + i, new Location(37.7 + i * 1e-4, -122.4));
+      drivers[i].setIndex(index);
+    }
+    Rider rider = new Rider("r", "n", "e", "p");
+    Ride[] rides = new Ride[rideCount];
+    Map<Long, Integer> byNumber = new HashMap<>();
+    for (int i = 0; i < rideCount; i++) {
+      rides[i] = new Ride(rider, new Location(37.7, -122.4), new Location(37.71, -122.41), RideType.UBER_X);
+      byNumber.put(rides[i].getNumber(), i);
+    }
+
+    AtomicIntegerArray wins = new AtomicIntegerArray(rideCount);
+    AtomicIntegerArray active = new AtomicIntegerArray(driverCount);
+    AtomicInteger violations = new AtomicInteger();
+    AtomicInteger accepted = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      Random random = new Random(t);
+      threads[t] = new Thread(() -> {
+        await(start);
+        for (int i = 0; i < 200_000; i++) {
+          int number = random.nextInt(driverCount);
+          Driver driver = drivers[number];
+          Integer current = byNumber.get(driver.getCurrentRideNumber());
+          // Even rides are taken without an offer, as batch matching does;
+          // odd ones go through offers.
+          int r = current != null && random.nextInt(4) > 0 ? current : random.nextInt(rideCount);
+          Ride ride = rides[r];
+          int op = random.nextInt(10);
+          if (op < 5) {
+            if (op < 2 && r % 2 == 1) {
+              driver.offer(ride, random.nextInt(3));
+            } else if (driver.acceptRide(ride)) {
+              accepted.incrementAndGet();
+              if (active.incrementAndGet(number) > 1 || wins.incrementAndGet(r) > 1) {
+                violations.incrementAndGet();
+              }
+              active.decrementAndGet(number);
+              if (random.nextBoolean()) {
+                driver.completeRide(ride);
+              } else {
+                driver.releaseRide(ride);
+              }
+            }
+          } else if (op < 8) {
+            driver.declineRide(ride);
+          } else if (System.currentTimeMillis() > ride.getOfferExpiresAt()) {
+            driver.expireOffer(ride);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Set<Ride> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    int inTwoHistories = 0;
+    int available = 0;
+    for (Driver driver : drivers) {
+      for (Ride ride : driver.getRideHistory()) {
+        if (!seen.add(ride)) {
+          inTwoHistories++;
+        }
+      }
+      if (driver.getStatus() == DriverStatus.AVAILABLE) {
+        available++;
+      }
+    }
+    int indexed = index.size(DriverStatus.AVAILABLE, RideType.UBER_X);
+    System.out.printf("drivers: %d threads x 200k ops, accepted %,d; rides won twice or drivers double-booked %d, "
+        + "rides in two histories %d, available %d, indexed %d%n",
+        THREADS, accepted.get(), violations.get(), inTwoHistories, available, indexed);
+    check(violations.get() == 0 && inTwoHistories == 0 && available == indexed, "a driver or ride was double-booked");
+  }
+
+  private static void lapsedOffers() throws InterruptedException {
+    // A late acceptRide and the offer timer race to expire the same offer;
+    // the ride must be handed on exactly once.
+    int rounds = 2_000;
+    Rider rider = new Rider("r", "n", "e", "p");
+    AtomicInteger handed = new AtomicInteger();
+    Driver driver = newDriver("late", new Location(10, 10));
+    driver.setOfferExpiredHandler(ride -> handed.incrementAndGet());
+    int accepted = 0;
+    for (int i = 0; i < rounds; i++) {
+      Ride ride = new Ride(rider, new Location(10, 10), new Location(10.01, 10), RideType.UBER_X);
+      driver.offer(ride, 0);
+      Thread.sleep(0, 100_000);
+      while (System.currentTimeMillis() <= ride.getOfferExpiresAt()) {
+        Thread.onSpinWait();
+      }
+      Thread timer = new Thread(() -> driver.expireOffer(ride));
+      timer.start();
+      if (driver.acceptRide(ride)) {
+        accepted++;
+      }
+      timer.join();
+      if (!ride.isDeclinedBy(driver) || driver.getStatus() != DriverStatus.AVAILABLE) {
+        check(false, "lapsed offer left the driver held or unrecorded");
+      }
+    }
+    System.out.printf("lapses: %,d offers accepted late while the timer fired: accepted %d, handed on %,d%n",
+        rounds, accepted, handed.get());
+    check(accepted == 0 && handed.get() == rounds, "a lapsed offer was lost or handed on twice");
+
+    // Through UberSystem, each lapse moves the ride to a driver who has not
+    // had it yet, beyond the first OFFER_CANDIDATES.
+    UberSystem system = UberSystem.getInstance();
+    List<Driver> nearby = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      Driver near = newDriver("lapse" + i, new Location(-20 + i * 1e-4, 40));
+      system.addDriver(near);
+      nearby.add(near);
+    }
+    Ride ride = system.requestRide(rider, new Location(-20, 40), new Location(-20.01, 40), RideType.UBER_X);
+    Set<Driver> offered = new HashSet<>();
+    boolean repeated = false;
+    Driver current = ride.getOfferedTo();
+    while (current != null && current.getCurrentRideNumber() == ride.getNumber()) {
+      repeated |= !offered.add(current);
+      current.expireOffer(ride);
+      current = ride.getOfferedTo();
+    }
+    System.out.printf("lapses: ride offered to %d of %d nearby drivers, repeated %b%n",
+        offered.size(), nearby.size(), repeated);
+    check(!repeated && offered.size() == nearby.size(), "a ride went back to a driver whose offer lapsed");
+  }
+
+  private static void concurrentRequests() throws InterruptedException {
+    int driverCount = 300;
+    int requestsPerThread = 500;
+    UberSystem system = UberSystem.getInstance();
+    Random placement = new Random(3);
+    Map<Driver, Integer> numbers = new IdentityHashMap<>();
+    for (int i = 0; i < driverCount; i++) {
+      Driver driver = newDriver("req" + i, new Location(51.5 + placement.nextDouble() * 0.02,
+          placement.nextDouble() * 0.02));
+      system.addDriver(driver);
+      numbers.put(driver, i);
+    }
+
+    AtomicIntegerArray active = new AtomicIntegerArray(driverCount);
+    AtomicInteger violations = new AtomicInteger();
+    AtomicInteger accepted = new AtomicInteger();
+    AtomicInteger repeatedOffers = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      Random random = new Random(100 + t);
+      Rider rider = new Rider("rider" + t, "n", "e", "p");
+      threads[t] = new Thread(() -> {
+        await(start);
+        List<Ride> riding = new ArrayList<>();
+        for (int i = 0; i < requestsPerThread; i++) {
+          Location pickup = new Location(51.5 + random.nextDouble() * 0.02, random.nextDouble() * 0.02);
+          Ride ride = system.requestRide(rider, pickup, new Location(51.52, 0.03), RideType.UBER_X);
+          Set<Driver> offered = new HashSet<>();
+          Driver driver = ride.getOfferedTo();
+          while (driver != null && driver.getCurrentRideNumber() == ride.getNumber()
+              && driver.getStatus() == DriverStatus.OFFERED) {
+            if (!offered.add(driver)) {
+              repeatedOffers.incrementAndGet();
+            }
+            int op = random.nextInt(3);
+            if (op == 0 && driver.acceptRide(ride)) {
+              accepted.incrementAndGet();
+              if (active.incrementAndGet(numbers.get(driver)) > 1 || ride.getDriver() != driver) {
+                violations.incrementAndGet();
+              }
+              riding.add(ride);
+              break;
+            } else if (op == 1) {
+              system.declineRide(driver, ride);
+            } else {
+              driver.expireOffer(ride);
+            }
+            driver = ride.getOfferedTo();
+          }
+          if (ride.getDriver() == null) {
+            system.cancelRide(ride);
+          }
+          // Keep a few rides going so drivers are busy while others request.
+          if (riding.size() > 3 || (!riding.isEmpty() && random.nextBoolean())) {
+            Ride done = riding.remove(0);
+            active.decrementAndGet(numbers.get(done.getDriver()));
+            system.completeRide(done);
+          }
+        }
+        for (Ride done : riding) {
+          active.decrementAndGet(numbers.get(done.getDriver()));
+          system.completeRide(done);
+        }
+      });
+      threads[t].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+
+    int left = 0;
+    Set<Ride> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    int inTwoHistories = 0;
+    for (Driver driver : numbers.keySet()) {
+      if (driver.getStatus() != DriverStatus.AVAILABLE) {
+        left++;
+      }
+      for (Ride ride : driver.getRideHistory()) {
+        if (!seen.add(ride)) {
+          inTwoHistories++;
+        }
+      }
+    }
+    int pendingTimeouts = system.getPendingOfferTimeouts();
+    System.out.printf("requests: %,d from %d threads in %d ms, accepted %,d; double-booked %d, rides in two histories %d, "
+        + "offers repeated to a driver %d, drivers not freed %d, offer timers left %d%n",
+        THREADS * requestsPerThread, THREADS, elapsedMillis, accepted.get(), violations.get(), inTwoHistories,
+        repeatedOffers.get(), left, pendingTimeouts);
+    check(violations.get() == 0 && inTwoHistories == 0 && repeatedOffers.get() == 0 && left == 0,
+        "concurrent requests broke an assignment");
+    check(pendingTimeouts == 0, "timers of answered offers were not cancelled");
+  }
+
+  private static Driver newDriver(String id, Location location) {
+    Driver driver = new Driver(id, id, "e", "p", new Vehicle("L-" + id, "m", "m", 2020, RideType.UBER_X, 4));
+    driver.updateLocation(location);
+    driver.setStatus(DriverStatus.AVAILABLE);
+    return driver;
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      System.out.println("FAILED: " + message);
+      failed = true;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+// Reusable buffer of (driver slot, latitude, longitude, timestamp) pings
+// held in parallel primitive arrays, so filling a batch allocates nothing.
+public class PingBatch {
+  final int[] slots;
+  final double[] latitudes;
+  final double[] longitudes;
+  final long[] times;
+  private int size;
+
+  public PingBatch(int capacity) {
+    this.slots = new int[capacity];
+    this.latitudes = new double[capacity];
+    this.longitudes = new double[capacity];
+    this.times = new long[capacity];
+  }
+
+  // Returns false when the batch is full and should be applied first.
+  public boolean add(int slot, double latitude, double longitude, long timeMillis) {
+    if (size == slots.length) {
+      return false;
+    }
+    slots[size] = slot;
+    latitudes[size] = latitude;
+    longitudes[size] = longitude;
+    times[size] = timeMillis;
+    size++;
+    return true;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() { return size; }
+}
@@ -1,15 +1,32 @@
 import java.util.Date;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Ride {
+  private static final AtomicLong NEXT_NUMBER = new AtomicLong(1);
+
   private String id;
+  private long number;
   private Rider rider;
-  private Driver driver;
+  private volatile Driver driver;
+  private volatile Driver offeredTo;
+  private volatile long offerExpiresAt;
+  // Timer that expires the pending offer; cancelled once the driver
+  // answers.
+  private volatile Future<?> offerTimeout;
+  // Drivers who declined the ride or let its offer lapse; it is not
+  // offered to them again.
+  private final Set<String> declinedBy = ConcurrentHashMap.newKeySet();
   private Location pickup;
   private Location dropoff;
   private RideType type;
-  private RideStatus status;
+  private volatile RideStatus status;
   private double fare;
+  // Surge in the pickup cell when the ride was requested.
+  private double surgeMultiplier = 1.0;
   private double distance;
   private Date requestTime;
   private Date startTime;
@@ -18,6 +35,7 @@ public class Ride {
 
   public Ride(Rider rider, Location pickup, Location dropoff, RideType type) {
     this.id = UUID.randomUUID().toString();
+    this.number = NEXT_NUMBER.getAndIncrement();
     this.rider = rider;
     this.pickup = pickup;
     this.dropoff = dropoff;
@@ -31,7 +49,7 @@ public class Ride {
     this.driver = driver;
   }
 
-  public void setStatus(RideStatus status) {
+  public synchronized void setStatus(RideStatus status) {
     this.status = status;
     if (status == RideStatus.STARTED) {
       this.startTime = new Date();
@@ -40,23 +58,74 @@ public class Ride {
     }
   }
 
+  // Accepts the ride for the driver unless it already has a driver or was
+  // cancelled.
+  synchronized boolean assignDriver(Driver driver) {
+    if (this.driver != null || status != RideStatus.REQUESTED) {
+      return false;
+    }
+    this.driver = driver;
+    setStatus(RideStatus.ACCEPTED);
+    return true;
+  }
+
+  void setOfferedTo(Driver driver) {
+    this.offeredTo = driver;
+  }
+
+  void setOfferExpiresAt(long offerExpiresAt) {
+    this.offerExpiresAt = offerExpiresAt;
+  }
+
+  void setOfferTimeout(Future<?> offerTimeout) {
+    this.offerTimeout = offerTimeout;
+  }
+
+  void cancelOfferTimeout() {
+    Future<?> timeout = offerTimeout;
+    if (timeout != null) {
+      timeout.cancel(false);
+    }
+  }
+
+  void addDeclinedBy(Driver driver) {
+    declinedBy.add(driver.getId());
+  }
+
+  boolean isDeclinedBy(Driver driver) {
+    return declinedBy.contains(driver.getId());
+  }
+
+  int getDeclinedCount() {
+    return declinedBy.size();
+  }
+
   public void setFare(double fare) {
     this.fare = fare;
   }
 
+  public void setSurgeMultiplier(double surgeMultiplier) {
+    this.surgeMultiplier = surgeMultiplier;
+  }
+
   public void setPayment(Payment payment) {
     this.payment = payment;
   }
 
   // Getters
   public String getId() { return id; }
+  // Compact numeric id, used in the driver's packed state.
+  public long getNumber() { return number; }
   public Rider getRider() { return rider; }
   public Driver getDriver() { return driver; }
+  public Driver getOfferedTo() { return offeredTo; }
+  public long getOfferExpiresAt() { return offerExpiresAt; }
   public Location getPickup() { return pickup; }
   public Location getDropoff() { return dropoff; }
   public RideType getType() { return type; }
   public RideStatus getStatus() { return status; }
   public double getFare() { return fare; }
+  public double getSurgeMultiplier() { return surgeMultiplier; }
   public double getDistance() { return distance; }
   public Date getRequestTime() { return requestTime; }
   public Date getStartTime() { return startTime; }
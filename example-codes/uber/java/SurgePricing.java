@@ -0,0 +1,147 @@
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Surge multipliers per geo cell. Ride requests are counted per cell with
+// striped counters; a tick thread folds them, and the available drivers in
+// the cell, into exponentially decayed rates and publishes each cell's
+// multiplier in a volatile field. Looking a multiplier up is one map read.
+//
+// Idle cells are dropped, while a request may still be counting on one it
+// looked up just before. Counters are never reset, so a dropped cell keeps
+// the requests it got after its last fold; whoever sees them first, the
+// tick that dropped it or the late request itself, carries them over to
+// the cell now in the map, under the dropped cell's lock so each request
+// moves once.
+public class SurgePricing {
+  private static final double CELL_DEGREES = 0.02; // ~2 km
+  private static final double MAX_MULTIPLIER = 3.0;
+  // Requests per minute per available driver the cell can take at 1.0x.
+  private static final double BALANCED_DEMAND_PER_DRIVER = 1.0;
+  // Idle cells whose demand has decayed below this are dropped.
+  private static final double IDLE_DEMAND_PER_MINUTE = 0.01;
+
+  private final DriverIndex driverIndex;
+  private final long tickMillis;
+  private final double decay; // weight kept by the old rate per tick
+  private final Map<Long, Cell> cells;
+  private final ScheduledExecutorService ticker;
+  private long foldedRequests; // touched by the tick thread only
+
+  // halfLifeMillis is how long the decayed rates take to move halfway to a
+  // new level of demand or supply.
+  public SurgePricing(DriverIndex driverIndex, long tickMillis, long halfLifeMillis) {
+    this.driverIndex = driverIndex;
+    this.tickMillis = tickMillis;
+    this.decay = Math.pow(0.5, (double) tickMillis / halfLifeMillis);
+    this.cells = new ConcurrentHashMap<>();
+    this.ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "surge-pricing");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public void start() {
+    ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    ticker.shutdown();
+  }
+
+  public void recordRequest(Location pickup) {
+    record(cellOf(pickup), 1);
+  }
+
+  public double getMultiplier(Location pickup) {
+    Cell cell = cells.get(cellOf(pickup));
+    return cell == null ? 1.0 : cell.multiplier;
+  }
+
+  void tick() {
+    double perMinute = 60000.0 / tickMillis;
+    for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+      Cell cell = entry.getValue();
+      long total = cell.requests.sum();
+      double requests = (total - cell.counted) * perMinute;
+      foldedRequests += total - cell.counted;
+      cell.counted = total;
+      int drivers = driverIndex.count(DriverStatus.AVAILABLE, cell.south, cell.west,
+          cell.south + CELL_DEGREES, cell.west + CELL_DEGREES);
+      cell.demandPerMinute = decay * cell.demandPerMinute + (1 - decay) * requests;
+      cell.supply = decay * cell.supply + (1 - decay) * drivers;
+      if (cell.demandPerMinute < IDLE_DEMAND_PER_MINUTE) {
+        if (cells.remove(entry.getKey(), cell)) {
+          cell.dropped = true;
+          carryOver(cell);
+        }
+        continue;
+      }
+      double pressure = cell.demandPerMinute / (Math.max(1, cell.supply) * BALANCED_DEMAND_PER_DRIVER);
+      // Published in steps of 0.1 so quotes do not flicker between ticks.
+      cell.multiplier = Math.round(Math.min(MAX_MULTIPLIER, Math.max(1.0, pressure)) * 10) / 10.0;
+    }
+  }
+
+  // Requests folded into the rates so far; read once ticking has stopped.
+  long getFoldedRequests() {
+    return foldedRequests;
+  }
+
+  private void record(long key, long count) {
+    Cell cell = cells.computeIfAbsent(key, Cell::new);
+    cell.requests.add(count);
+    // The add must be visible to a tick that drops the cell after this
+    // reads dropped as false; LongAdder only releases its writes.
+    VarHandle.fullFence();
+    if (cell.dropped) {
+      carryOver(cell);
+    }
+  }
+
+  // Moves the requests a dropped cell got since they were last counted to
+  // the cell now in the map.
+  private void carryOver(Cell cell) {
+    long late;
+    synchronized (cell) {
+      long total = cell.requests.sum();
+      late = total - cell.counted;
+      cell.counted = total;
+    }
+    if (late > 0) {
+      record(cell.key, late);
+    }
+  }
+
+  private static long cellOf(Location location) {
+    return ((long) Math.floor(location.getLatitude() / CELL_DEGREES) << 32)
+        | ((long) Math.floor(location.getLongitude() / CELL_DEGREES) & 0xffffffffL);
+  }
+
+  private static class Cell {
+    private final LongAdder requests = new LongAdder();
+    private final long key;
+    private final double south;
+    private final double west;
+    // Set once the cell is out of the map.
+    private volatile boolean dropped;
+    // Requests already folded or carried over; written by the tick thread
+    // while the cell is in the map, under the cell's lock once dropped.
+    private long counted;
+    // Written by the tick thread only.
+    private double demandPerMinute;
+    private double supply;
+    private volatile double multiplier = 1.0;
+
+    Cell(long key) {
+      this.key = key;
+      this.south = (key >> 32) * CELL_DEGREES;
+      this.west = ((int) key) * CELL_DEGREES;
+    }
+  }
+}
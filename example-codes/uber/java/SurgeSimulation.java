@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Replays a demand spike against SurgePricing. One 2 km cell with 20
+// drivers sees 10 requests a minute, then 80 a minute for five minutes
+// with half its drivers busy, then 10 again; the multiplier must rise
+// during the spike and settle back to 1.0x. It then measures lookups
+// across 10,000 active cells, alone and while the rates are ticking, and
+// checks that no request is lost while idle cells are dropped and
+// recreated under concurrent recording.
+// Run with java -cp out SurgeSimulation; exits with status 1 on any
+// violation.
+public class SurgeSimulation {
+  private static boolean failed;
+  private static double sink;
+
+  public static void main(String[] args) throws InterruptedException {
+    SurgePricing surge = spikeReplay();
+    lookups(surge);
+    idleCellChurn();
+    if (sink == 42) {
+      System.out.println();
+    }
+    if (failed) {
+      System.exit(1);
+    }
+  }
+
+  private static SurgePricing spikeReplay() {
+    Random random = new Random(1);
+    DriverIndex index = new DriverIndex();
+    List<Driver> inCell = new ArrayList<>();
+    // The cell spans 37.76..37.78 and -122.42..-122.40.
+    for (int i = 0; i < 20; i++) {
+      Driver driver = newDriver("d" + i, RideType.values()[i % RideType.values().length],
+          new Location(37.7601 + random.nextDouble() * 0.0198, -122.4199 + random.nextDouble() * 0.0198));
+      driver.setIndex(index);
+      inCell.add(driver);
+    }
+    for (int i = 0; i < 200; i++) {
+      Driver driver = newDriver("x" + i, RideType.UBER_X,
+          new Location(37.70 + random.nextDouble() * 0.05, -122.5 + random.nextDouble() * 0.07));
+      driver.setIndex(index);
+    }
+
+    // Ticked by hand, one tick per simulated second.
+    SurgePricing surge = new SurgePricing(index, 1000, 60000);
+    Location pickup = new Location(37.77, -122.41);
+    double owed = 0;
+    double peak = 0;
+    for (int second = 0; second <= 1200; second++) {
+      double perMinute = second < 300 ? 10 : second < 600 ? 80 : 10;
+      if (second == 300 || second == 600) {
+        for (int i = 0; i < 10; i++) {
+          inCell.get(i).setStatus(second == 300 ? DriverStatus.BUSY : DriverStatus.AVAILABLE);
+        }
+      }
+      owed += perMinute / 60;
+      for (; owed >= 1; owed--) {
+        surge.recordRequest(pickup);
+      }
+      surge.tick();
+      double multiplier = surge.getMultiplier(pickup);
+      peak = Math.max(peak, multiplier);
+      if (second % 60 == 0 || second == 330 || second == 630) {
+        System.out.printf("t=%4ds demand %2.0f/min, multiplier %.1fx%n", second, perMinute, multiplier);
+      }
+    }
+    double settled = surge.getMultiplier(pickup);
+    System.out.printf("spike: peak %.1fx, after recovery %.1fx%n", peak, settled);
+    check(peak >= 2.0 && settled == 1.0, "multiplier did not follow the spike");
+    return surge;
+  }
+
+  private static void lookups(SurgePricing surge) throws InterruptedException {
+    Random random = new Random(2);
+    Location[] pickups = new Location[10_000];
+    for (int i = 0; i < pickups.length; i++) {
+      pickups[i] = new Location(37 + random.nextDouble() * 2, -123 + random.nextDouble() * 2);
+      surge.recordRequest(pickups[i]);
+    }
+    surge.tick();
+    long nanos = 0;
+    int count = 5_000_000;
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        sink += surge.getMultiplier(pickups[i % pickups.length]);
+      }
+      nanos = System.nanoTime() - start;
+    }
+
+    Thread ticking = new Thread(() -> {
+      Random requests = new Random(3);
+      for (int tick = 0; tick < 2000; tick++) {
+        for (int i = 0; i < 100; i++) {
+          surge.recordRequest(pickups[requests.nextInt(pickups.length)]);
+        }
+        surge.tick();
+      }
+    });
+    ticking.start();
+    long start = System.nanoTime();
+    long underTicks = 0;
+    while (ticking.isAlive()) {
+      for (int i = 0; i < 100_000; i++) {
+        sink += surge.getMultiplier(pickups[i % pickups.length]);
+      }
+      underTicks += 100_000;
+    }
+    System.out.printf("lookups over 10k cells: %.1f ns, %.1f ns while ticking (%,d lookups)%n",
+        (double) nanos / count, (double) (System.nanoTime() - start) / underTicks, underTicks);
+  }
+
+  // With no half-life to speak of, a cell goes idle on any tick it gets no
+  // request, so cells are dropped and recreated all the time while
+  // recorders keep counting on them.
+  private static void idleCellChurn() throws InterruptedException {
+    SurgePricing surge = new SurgePricing(new DriverIndex(), 1000, 1);
+    Location[] pickups = new Location[1000];
+    for (int i = 0; i < pickups.length; i++) {
+      pickups[i] = new Location(i * 0.02 + 0.01, 0.01);
+    }
+    int threads = 8;
+    int perThread = 500_000;
+    AtomicBoolean recording = new AtomicBoolean(true);
+    Thread ticker = new Thread(() -> {
+      while (recording.get()) {
+        surge.tick();
+      }
+    });
+    Thread[] recorders = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      Random random = new Random(10 + t);
+      recorders[t] = new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          surge.recordRequest(pickups[random.nextInt(pickups.length)]);
+        }
+      });
+    }
+    ticker.start();
+    for (Thread recorder : recorders) {
+      recorder.start();
+    }
+    for (Thread recorder : recorders) {
+      recorder.join();
+    }
+    recording.set(false);
+    ticker.join();
+    // A last tick folds what is left.
+    surge.tick();
+    long recorded = (long) threads * perThread;
+    System.out.printf("idle cells dropped under %d recorders: recorded %,d, folded %,d%n",
+        threads, recorded, surge.getFoldedRequests());
+    check(surge.getFoldedRequests() == recorded, "requests were lost when idle cells were dropped");
+  }
+
+  private static Driver newDriver(String id, RideType type, Location location) {
+    Driver driver = new Driver(id, id, "e", "p", new Vehicle("L-" + id, "m", "m", 2020, type, 4));
+    driver.updateLocation(location);
+    driver.setStatus(DriverStatus.AVAILABLE);
+    return driver;
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      System.out.println("FAILED: " + message);
+      failed = true;
+    }
+  }
+}
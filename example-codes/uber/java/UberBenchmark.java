@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+// Benchmarks for driver search and location ingestion, built with the same
+// javac line as the rest of the example:
+//
+//   javac -d out *.java && java -cp out UberBenchmark [suite ...]
+//
+// Suites:
+//   nearest   full scan vs DriverIndex k=1 and k=10 for 1k, 100k and 1M
+//             drivers over a 50 x 50 km metro; every index answer is
+//             checked against the scan
+//   ingest    1M pings over 200k drivers, per-ping updateLocation vs
+//             LocationIngestor batches of 1000
+//   distance  plain haversine vs Location.distanceTo vs
+//             approximateDistanceTo, and the approximation's worst error
+// With no argument every suite runs. Timings are taken after warm-up rounds.
+// Exits with status 1 if a search result or distance is wrong.
+public class UberBenchmark {
+  private static final double SOUTH = 37.5;
+  private static final double WEST = -122.6;
+  private static final double SPAN_DEGREES = 0.45; // ~50 km
+  private static final int WARMUP_ROUNDS = 5;
+
+  private static boolean failed;
+  private static double sink;
+
+  public static void main(String[] args) {
+    List<String> suites = Arrays.asList(args.length > 0 ? args : new String[] {"nearest", "ingest", "distance"});
+    for (String suite : suites) {
+      switch (suite) {
+        case "nearest":
+          nearest();
+          break;
+        case "ingest":
+          ingest();
+          break;
+        case "distance":
+          distance();
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown suite " + suite);
+      }
+    }
+    if (sink == 42) {
+      System.out.println();
+    }
+    if (failed) {
+      System.exit(1);
+    }
+  }
+
+  private static void nearest() {
+    for (int count : new int[] {1_000, 100_000, 1_000_000}) {
+      Random random = new Random(count);
+      DriverIndex index = new DriverIndex();
+      List<Driver> drivers = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        RideType type = RideType.values()[random.nextInt(RideType.values().length)];
+        Driver driver = new Driver("d" + i, "n", "e", "p", new Vehicle("L" + i, "m", "m", 2020, type, 4));
+        driver.updateLocation(randomLocation(random));
+        driver.setStatus(random.nextInt(10) < 7 ? DriverStatus.AVAILABLE : DriverStatus.BUSY);
+        driver.setIndex(index);
+        drivers.add(driver);
+      }
+      int queries = count >= 1_000_000 ? 200 : 2_000;
+      Location[] pickups = new Location[queries];
+      for (int i = 0; i < queries; i++) {
+        pickups[i] = randomLocation(random);
+      }
+
+      long scanNanos = 0;
+      long nearestNanos = 0;
+      long tenNanos = 0;
+      int mismatches = 0;
+      for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+        Driver[] scanned = new Driver[queries];
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+          scanned[i] = scan(drivers, pickups[i]);
+        }
+        scanNanos = System.nanoTime() - start;
+
+        Driver[] found = new Driver[queries];
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+          List<Driver> nearest = index.findNearest(pickups[i], RideType.UBER_X, DriverStatus.AVAILABLE, 1);
+          found[i] = nearest.isEmpty() ? null : nearest.get(0);
+        }
+        nearestNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+          sink += index.findNearest(pickups[i], RideType.UBER_X, DriverStatus.AVAILABLE, 10).size();
+        }
+        tenNanos = System.nanoTime() - start;
+
+        mismatches = 0;
+        for (int i = 0; i < queries; i++) {
+          if (found[i] != scanned[i] && (found[i] == null || scanned[i] == null
+              || found[i].getCurrentLocation().distanceTo(pickups[i])
+                  != scanned[i].getCurrentLocation().distanceTo(pickups[i]))) {
+            mismatches++;
+          }
+        }
+      }
+
+      int listMismatches = 0;
+      for (int i = 0; i < 50; i++) {
+        Location pickup = pickups[i];
+        List<Driver> expected = new ArrayList<>();
+        for (Driver driver : drivers) {
+          if (driver.getStatus() == DriverStatus.AVAILABLE && driver.getVehicle().getType() == RideType.UBER_XL) {
+            expected.add(driver);
+          }
+        }
+        expected.sort(Comparator.comparingDouble(driver -> driver.getCurrentLocation().distanceTo(pickup)));
+        expected = expected.subList(0, Math.min(10, expected.size()));
+        if (!expected.equals(index.findNearest(pickup, RideType.UBER_XL, DriverStatus.AVAILABLE, 10))) {
+          listMismatches++;
+        }
+      }
+      System.out.printf("nearest %,9d drivers: scan %8.1f us, index k=1 %6.1f us, k=10 %6.1f us per query; "
+              + "k=1 mismatches %d/%d, k=10 mismatches %d/50%n",
+          count, scanNanos / 1e3 / queries, nearestNanos / 1e3 / queries, tenNanos / 1e3 / queries,
+          mismatches, queries, listMismatches);
+      check(mismatches == 0 && listMismatches == 0, "index disagrees with the full scan");
+    }
+  }
+
+  private static void ingest() {
+    int driverCount = 200_000;
+    int pings = 1_000_000;
+    Random random = new Random(7);
+    // Each ping is a ~40 m random-walk step; one in 20 arrives late.
+    int[] slots = new int[pings];
+    double[] latitudes = new double[pings];
+    double[] longitudes = new double[pings];
+    long[] times = new long[pings];
+    double[] lastLatitude = new double[driverCount];
+    double[] lastLongitude = new double[driverCount];
+    long[] clock = new long[driverCount];
+    for (int i = 0; i < driverCount; i++) {
+      lastLatitude[i] = SOUTH + random.nextDouble() * SPAN_DEGREES;
+      lastLongitude[i] = WEST + random.nextDouble() * SPAN_DEGREES;
+    }
+    for (int i = 0; i < pings; i++) {
+      int slot = random.nextInt(driverCount);
+      slots[i] = slot;
+      lastLatitude[slot] += (random.nextDouble() - 0.5) * 0.0008;
+      lastLongitude[slot] += (random.nextDouble() - 0.5) * 0.0008;
+      latitudes[i] = lastLatitude[slot];
+      longitudes[i] = lastLongitude[slot];
+      clock[slot] += 4000;
+      times[i] = random.nextInt(20) == 0 ? clock[slot] - 8000 : clock[slot];
+    }
+
+    for (int round = 0; round < 4; round++) {
+      DriverIndex directIndex = new DriverIndex();
+      DriverIndex batchIndex = new DriverIndex();
+      LocationIngestor ingestor = new LocationIngestor(batchIndex);
+      Driver[] direct = new Driver[driverCount];
+      for (int i = 0; i < driverCount; i++) {
+        direct[i] = newAvailableDriver("d" + i, directIndex);
+        int slot = ingestor.register(newAvailableDriver("d" + i, batchIndex));
+        if (slot != i) {
+          throw new IllegalStateException("Slots are expected in registration order");
+        }
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < pings; i++) {
+        direct[slots[i]].updateLocation(new Location(latitudes[i], longitudes[i]));
+      }
+      long directNanos = System.nanoTime() - start;
+
+      PingBatch batch = new PingBatch(1000);
+      start = System.nanoTime();
+      for (int i = 0; i < pings; i++) {
+        if (!batch.add(slots[i], latitudes[i], longitudes[i], times[i])) {
+          ingestor.apply(batch);
+          batch.clear();
+          batch.add(slots[i], latitudes[i], longitudes[i], times[i]);
+        }
+      }
+      ingestor.apply(batch);
+      long batchNanos = System.nanoTime() - start;
+
+      if (round == 3) {
+        System.out.printf("ingest 1M pings over 200k drivers: per-ping updateLocation %.2f M pings/s, "
+                + "batched %.2f M pings/s (applied %,d, dropped %,d)%n",
+            pings / (directNanos / 1e3), pings / (batchNanos / 1e3),
+            ingestor.getAppliedCount(), ingestor.getDroppedCount());
+        // Drivers are indexed from their first ping on, by either path.
+        check(batchIndex.size(DriverStatus.AVAILABLE, RideType.UBER_X)
+                == directIndex.size(DriverStatus.AVAILABLE, RideType.UBER_X),
+            "batched ingestion lost drivers from the index");
+      }
+    }
+  }
+
+  private static void distance() {
+    int count = 1 << 20;
+    Random random = new Random(11);
+    Location[] from = new Location[count];
+    Location[] to = new Location[count];
+    for (int i = 0; i < count; i++) {
+      from[i] = randomLocation(random);
+      to[i] = randomLocation(random);
+    }
+    long haversineNanos = 0;
+    long cachedNanos = 0;
+    long approximateNanos = 0;
+    for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        sink += haversine(from[i], to[i]);
+      }
+      haversineNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        sink += from[i].distanceTo(to[i]);
+      }
+      cachedNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        sink += from[i].approximateDistanceTo(to[i]);
+      }
+      approximateNanos = System.nanoTime() - start;
+    }
+
+    double exactError = 0;
+    double approximateError = 0;
+    for (int i = 0; i < count; i++) {
+      double expected = haversine(from[i], to[i]);
+      if (expected > 0) {
+        exactError = Math.max(exactError, Math.abs(from[i].distanceTo(to[i]) - expected));
+        approximateError = Math.max(approximateError,
+            Math.abs(from[i].approximateDistanceTo(to[i]) - expected) / expected);
+      }
+    }
+    System.out.printf("distance: haversine %.1f ns, distanceTo %.1f ns, approximateDistanceTo %.1f ns; "
+            + "distanceTo max error %.1e km, approximation max relative error %.1e%n",
+        (double) haversineNanos / count, (double) cachedNanos / count, (double) approximateNanos / count,
+        exactError, approximateError);
+    check(exactError < 1e-9 && approximateError < 0.001, "distance outside its documented error");
+  }
+
+  // The haversine formula as written before Location cached its radians.
+  private static double haversine(Location a, Location b) {
+    double latDistance = Math.toRadians(b.getLatitude() - a.getLatitude());
+    double lonDistance = Math.toRadians(b.getLongitude() - a.getLongitude());
+    double h = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+        + Math.cos(Math.toRadians(a.getLatitude())) * Math.cos(Math.toRadians(b.getLatitude()))
+        * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+    return 2 * 6371 * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+  }
+
+  // The linear scan findNearestDriver did before the grid index.
+  private static Driver scan(List<Driver> drivers, Location pickup) {
+    Driver nearest = null;
+    double best = Double.MAX_VALUE;
+    for (Driver driver : drivers) {
+      if (driver.getStatus() == DriverStatus.AVAILABLE && driver.getVehicle().getType() == RideType.UBER_X) {
+        double distance = driver.getCurrentLocation().distanceTo(pickup);
+        if (distance < best) {
+          best = distance;
+          nearest = driver;
+        }
+      }
+    }
+    return nearest;
+  }
+
+  private static Driver newAvailableDriver(String id, DriverIndex index) {
+    Driver driver = new Driver(id, "n", "e", "p", new Vehicle("L", "m", "m", 2020, RideType.UBER_X, 4));
+    driver.setStatus(DriverStatus.AVAILABLE);
+    driver.setIndex(index);
+    return driver;
+  }
+
+  private static Location randomLocation(Random random) {
+    return new Location(SOUTH + random.nextDouble() * SPAN_DEGREES, WEST + random.nextDouble() * SPAN_DEGREES);
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      System.out.println("FAILED: " + message);
+      failed = true;
+    }
+  }
+}
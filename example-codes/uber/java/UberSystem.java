@@ -1,19 +1,45 @@
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class UberSystem {
   private static UberSystem instance;
+  // A driver has this long to accept an offered ride before it moves on.
+  private static final long OFFER_TIMEOUT_MILLIS = 15000;
+  private static final int OFFER_CANDIDATES = 5;
+  private static final long SURGE_TICK_MILLIS = 1000;
+  private static final long SURGE_HALF_LIFE_MILLIS = 60000;
   private Map<String, Driver> drivers;
   private Map<String, Rider> riders;
   private Map<String, Ride> rides;
+  private DriverIndex driverIndex;
+  private LocationIngestor locationIngestor;
+  private volatile BatchMatcher batchMatcher;
+  private SurgePricing surgePricing;
+  private final ScheduledThreadPoolExecutor offerTimer;
   private final double BASE_FARE = 2.0;
   private final double PER_KM_RATE = 1.5;
   private final double PER_MINUTE_RATE = 0.3;
 
   private UberSystem() {
-    this.drivers = new HashMap<>();
-    this.riders = new HashMap<>();
-    this.rides = new HashMap<>();
+    this.drivers = new ConcurrentHashMap<>();
+    this.riders = new ConcurrentHashMap<>();
+    this.rides = new ConcurrentHashMap<>();
+    this.driverIndex = new DriverIndex();
+    this.locationIngestor = new LocationIngestor(driverIndex);
+    this.surgePricing = new SurgePricing(driverIndex, SURGE_TICK_MILLIS, SURGE_HALF_LIFE_MILLIS);
+    this.surgePricing.start();
+    this.offerTimer = new ScheduledThreadPoolExecutor(1, task -> {
+      Thread thread = new Thread(task, "ride-offer-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Most offers are answered long before they time out; drop their
+    // timers at once rather than holding them for the full timeout.
+    this.offerTimer.setRemoveOnCancelPolicy(true);
   }
 
   public static synchronized UberSystem getInstance() {
@@ -25,28 +51,48 @@ public class UberSystem {
 
   public void addDriver(Driver driver) {
     drivers.put(driver.getId(), driver);
+    driver.setIndex(driverIndex);
+    // Whether the offer timer or a late acceptRide expires an offer, the
+    // ride moves on to the next driver.
+    driver.setOfferExpiredHandler(this::offerRide);
+    locationIngestor.register(driver);
   }
 
   public void addRider(Rider rider) {
     riders.put(rider.getId(), rider);
   }
 
-  public Driver findNearestDriver(Location pickup, RideType type) {
-    Driver nearestDriver = null;
-    double minDistance = Double.MAX_VALUE;
-
-    for (Driver driver : drivers.values()) {
-      if (driver.getStatus() == DriverStatus.AVAILABLE && 
-          driver.getVehicle().getType() == type) {
-        double distance = driver.getCurrentLocation().distanceTo(pickup);
-        if (distance < minDistance) {
-          minDistance = distance;
-          nearestDriver = driver;
-        }
-      }
+  // From now on, requested rides are matched in windows of windowMillis
+  // instead of being offered to the nearest driver on arrival.
+  public synchronized void enableBatchMatching(long windowMillis, int workerCount) {
+    if (batchMatcher == null) {
+      batchMatcher = new BatchMatcher(driverIndex, windowMillis, workerCount);
+      batchMatcher.start();
     }
+  }
+
+  public synchronized void disableBatchMatching() {
+    if (batchMatcher != null) {
+      batchMatcher.shutdown();
+      batchMatcher = null;
+    }
+  }
+
+  public LocationIngestor getLocationIngestor() {
+    return locationIngestor;
+  }
+
+  public SurgePricing getSurgePricing() {
+    return surgePricing;
+  }
+
+  public Driver findNearestDriver(Location pickup, RideType type) {
+    List<Driver> nearest = driverIndex.findNearest(pickup, type, DriverStatus.AVAILABLE, 1);
+    return nearest.isEmpty() ? null : nearest.get(0);
+  }
 
-    return nearestDriver;
+  public List<Driver> findNearestDrivers(Location pickup, RideType type, int k) {
+    return driverIndex.findNearest(pickup, type, DriverStatus.AVAILABLE, k);
   }
 
   public double calculateFare(Ride ride) {
@@ -62,24 +108,73 @@ public class UberSystem {
 
     double fare = BASE_FARE + (distance * PER_KM_RATE) + (duration * PER_MINUTE_RATE);
     fare *= ride.getType().getMultiplier();
+    fare *= ride.getSurgeMultiplier();
 
     return Math.round(fare * 100.0) / 100.0; // Round to 2 decimal places
   }
 
   public Ride requestRide(Rider rider, Location pickup, Location dropoff, RideType type) {
     Ride ride = rider.requestRide(pickup, dropoff, type);
+    // The rider is quoted the surge before their own request counts toward it.
+    ride.setSurgeMultiplier(surgePricing.getMultiplier(pickup));
+    surgePricing.recordRequest(pickup);
     rides.put(ride.getId(), ride);
 
-    // Find and notify nearest driver
-    Driver nearestDriver = findNearestDriver(pickup, type);
-    if (nearestDriver != null) {
-      // In a real system, this would send a notification to the driver
-      System.out.println("Ride request sent to driver: " + nearestDriver.getName());
+    BatchMatcher matcher = batchMatcher;
+    if (matcher != null) {
+      // The ride is accepted by its driver when its window is matched. A
+      // ride the matcher gives up on, or still held when it shuts down, is
+      // offered to the nearest driver instead.
+      matcher.submit(ride).whenComplete((driver, error) -> {
+        if (driver == null) {
+          offerRide(ride);
+        }
+      });
+      return ride;
     }
 
+    offerRide(ride);
     return ride;
   }
 
+  // Offers the ride to the nearest available driver who has not declined
+  // it or let an offer for it lapse. If the offer times out it moves on to
+  // the next driver. Returns the driver offered the ride, or null if none
+  // is free.
+  public Driver offerRide(Ride ride) {
+    if (ride.getStatus() != RideStatus.REQUESTED) {
+      return null;
+    }
+    // Drivers who passed on the ride may still be among the nearest, so
+    // look up enough to get OFFER_CANDIDATES new ones.
+    int candidates = OFFER_CANDIDATES + ride.getDeclinedCount();
+    for (Driver driver : findNearestDrivers(ride.getPickup(), ride.getType(), candidates)) {
+      if (!ride.isDeclinedBy(driver) && driver.offer(ride, OFFER_TIMEOUT_MILLIS)) {
+        // Re-offered through the driver's expired-offer handler.
+        ScheduledFuture<?> timeout =
+            offerTimer.schedule(() -> driver.expireOffer(ride), OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        ride.setOfferTimeout(timeout);
+        // The driver may have answered before the timer was stored.
+        if (driver.getStatus() != DriverStatus.OFFERED || driver.getCurrentRideNumber() != ride.getNumber()) {
+          timeout.cancel(false);
+        }
+        return driver;
+      }
+    }
+    return null;
+  }
+
+  // Offer timers still waiting to fire.
+  int getPendingOfferTimeouts() {
+    return offerTimer.getQueue().size();
+  }
+
+  public void declineRide(Driver driver, Ride ride) {
+    if (driver.declineRide(ride)) {
+      offerRide(ride);
+    }
+  }
+
   public void completeRide(Ride ride) {
     double fare = calculateFare(ride);
     ride.setFare(fare);
@@ -93,8 +188,9 @@ public class UberSystem {
 
   public void cancelRide(Ride ride) {
     ride.setStatus(RideStatus.CANCELLED);
-    if (ride.getDriver() != null) {
-      ride.getDriver().setStatus(DriverStatus.AVAILABLE);
+    Driver driver = ride.getDriver() != null ? ride.getDriver() : ride.getOfferedTo();
+    if (driver != null) {
+      driver.releaseRide(ride);
     }
   }
 }